@@ -0,0 +1,60 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.dto.ApplicableCouponsResponse;
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// POST /api/applicable-coupons without the HTTP layer: candidate lookup, evaluation of
+// every candidate against the cart and building the responses for the winners. With
+// resultCache the same cart is asked for again and again, so every call after the
+// first is a hit
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ApplicableCouponsBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    private int catalogSize;
+
+    @Param({"1", "50", "500"})
+    private int cartLines;
+
+    @Param({"false", "true"})
+    private boolean resultCache;
+
+    private CouponService couponService;
+    private CartRequest cart;
+
+    @Setup
+    public void setUp() {
+        couponService = BenchmarkFixtures.couponService(
+                BenchmarkFixtures.repository(BenchmarkFixtures.catalog(catalogSize, 42L)), resultCache);
+        cart = BenchmarkFixtures.cart(cartLines, 7L);
+    }
+
+    @Benchmark
+    public ApplicableCouponsResponse allApplicable() {
+        return couponService.getApplicableCoupons(cart, null, null);
+    }
+
+    @Benchmark
+    public ApplicableCouponsResponse topTen() {
+        return couponService.getApplicableCoupons(cart, 10, null);
+    }
+}
@@ -0,0 +1,96 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.entity.Cart;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// POST /api/apply-coupon/{id} without the HTTP layer: lookup, validation, building the
+// cart with its discounts and counting the usage. The catalog size barely matters here,
+// so it stays fixed and the coupon type varies instead.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApplyCouponBenchmark {
+
+    private static final long CART_WISE_ID = 1L;
+    private static final long PRODUCT_WISE_ID = 2L;
+    private static final long BXGY_ID = 3L;
+
+    @Param({"CART_WISE", "PRODUCT_WISE", "BXGY"})
+    private Coupon.CouponType couponType;
+
+    // Carts always hold products 1 and 2, which the coupons under test target
+    @Param({"2", "50", "500"})
+    private int cartLines;
+
+    private CouponService couponService;
+    private CartRequest cart;
+    private long couponId;
+
+    @Setup
+    public void setUp() {
+        List<Coupon> coupons = new ArrayList<>();
+        coupons.add(coupon(CART_WISE_ID, Coupon.CouponType.CART_WISE, Coupon.DiscountType.PERCENTAGE, 10, null));
+        coupons.add(coupon(PRODUCT_WISE_ID, Coupon.CouponType.PRODUCT_WISE, Coupon.DiscountType.PERCENTAGE, 20,
+                Collections.singletonList(1L)));
+        Coupon bxgy = coupon(BXGY_ID, Coupon.CouponType.BXGY, Coupon.DiscountType.FIXED_AMOUNT, 0, null);
+        bxgy.setRepetitionLimit(2);
+        bxgy.setBxgyRules(Collections.singletonList(BenchmarkFixtures.rule(bxgy, 2, Collections.singletonList(1L),
+                1, Collections.singletonList(2L))));
+        coupons.add(bxgy);
+        for (Coupon synthetic : BenchmarkFixtures.catalog(1000, 42L)) {
+            synthetic.setId(synthetic.getId() + BXGY_ID);
+            coupons.add(synthetic);
+        }
+        couponService = BenchmarkFixtures.couponService(BenchmarkFixtures.repository(coupons));
+
+        List<CartRequest.CartItemRequest> items = new ArrayList<>(Arrays.asList(
+                BenchmarkFixtures.item(1L, 4, new BigDecimal("25.00")),
+                BenchmarkFixtures.item(2L, 2, new BigDecimal("15.00"))));
+        items.addAll(BenchmarkFixtures.cart(Math.max(0, cartLines - items.size()), 7L).getItems());
+        cart = new CartRequest(items);
+
+        couponId = couponType == Coupon.CouponType.CART_WISE ? CART_WISE_ID
+                : couponType == Coupon.CouponType.PRODUCT_WISE ? PRODUCT_WISE_ID : BXGY_ID;
+    }
+
+    @Benchmark
+    public Cart applyCoupon() {
+        return couponService.applyCoupon(couponId, cart);
+    }
+
+    private static Coupon coupon(long id, Coupon.CouponType type, Coupon.DiscountType discountType,
+                                 int discountValue, List<Long> productIds) {
+        Coupon coupon = new Coupon();
+        coupon.setId(id);
+        coupon.setCode("BENCH" + id);
+        coupon.setName("Benchmark coupon " + id);
+        coupon.setType(type);
+        coupon.setDiscountType(discountType);
+        coupon.setDiscountValue(BigDecimal.valueOf(discountValue));
+        coupon.setApplicableProductIds(productIds);
+        return coupon;
+    }
+}
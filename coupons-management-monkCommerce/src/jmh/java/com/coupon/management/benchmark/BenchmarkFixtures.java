@@ -0,0 +1,240 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.catalog.ApplicableCouponsCache;
+import com.coupon.management.catalog.CouponCatalog;
+import com.coupon.management.catalog.CouponLookupCache;
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.metrics.CouponMetrics;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.service.CouponService;
+import com.coupon.management.usage.CouponUsageLedger;
+import com.coupon.management.usage.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.Validation;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Synthetic catalogs and carts, and a CouponService wired by hand against an in-memory
+// repository so the benchmarks measure the engine rather than H2 and Hibernate
+final class BenchmarkFixtures {
+
+    // Synthetic products use ids from here on, below it ids are free for hand-made coupons
+    static final long FIRST_PRODUCT_ID = 100L;
+    static final int PRODUCT_COUNT = 10_000;
+
+    private BenchmarkFixtures() {
+    }
+
+    // Roughly 10% CART_WISE, 70% PRODUCT_WISE and 20% BXGY, all active and valid now
+    static List<Coupon> catalog(int size, long seed) {
+        Random random = new Random(seed);
+        LocalDateTime now = LocalDateTime.now();
+        List<Coupon> coupons = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Coupon coupon = new Coupon();
+            coupon.setId((long) i + 1);
+            coupon.setCode("SYN" + (i + 1));
+            coupon.setName("Synthetic coupon " + (i + 1));
+            coupon.setValidFrom(now.minusDays(1));
+            coupon.setValidUntil(now.plusDays(30));
+            coupon.setCreatedAt(now);
+            coupon.setUpdatedAt(now);
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                coupon.setType(Coupon.CouponType.CART_WISE);
+                setDiscount(coupon, random);
+                if (random.nextBoolean()) {
+                    coupon.setMinimumCartValue(BigDecimal.valueOf(random.nextInt(500)));
+                }
+            } else if (kind < 8) {
+                coupon.setType(Coupon.CouponType.PRODUCT_WISE);
+                setDiscount(coupon, random);
+                coupon.setApplicableProductIds(productIds(random, 1 + random.nextInt(5)));
+            } else {
+                coupon.setType(Coupon.CouponType.BXGY);
+                coupon.setDiscountType(Coupon.DiscountType.FIXED_AMOUNT);
+                coupon.setDiscountValue(BigDecimal.ZERO);
+                coupon.setRepetitionLimit(1 + random.nextInt(3));
+                coupon.setBxgyRules(Collections.singletonList(
+                        rule(coupon, 1 + random.nextInt(3), productIds(random, 1 + random.nextInt(3)),
+                                1, productIds(random, 1 + random.nextInt(2)))));
+            }
+            coupons.add(coupon);
+        }
+        return coupons;
+    }
+
+    // Distinct synthetic products, 1 to 5 units each, priced between 1.00 and 200.00
+    static CartRequest cart(int lines, long seed) {
+        Random random = new Random(seed);
+        List<CartRequest.CartItemRequest> items = new ArrayList<>(lines);
+        for (Long productId : productIds(random, Math.min(lines, PRODUCT_COUNT))) {
+            items.add(item(productId, 1 + random.nextInt(5), BigDecimal.valueOf(100 + random.nextInt(19_901), 2)));
+        }
+        return new CartRequest(items);
+    }
+
+    static CartRequest.CartItemRequest item(long productId, int quantity, BigDecimal price) {
+        return new CartRequest.CartItemRequest(productId, "Product " + productId, quantity, price);
+    }
+
+    static BxGyRule rule(Coupon coupon, int buyQuantity, List<Long> buyProductIds,
+                         int getQuantity, List<Long> getProductIds) {
+        BxGyRule rule = new BxGyRule();
+        rule.setCoupon(coupon);
+        rule.setBuyQuantity(buyQuantity);
+        rule.setBuyProductIds(buyProductIds);
+        rule.setGetQuantity(getQuantity);
+        rule.setGetProductIds(getProductIds);
+        rule.setPriority(1);
+        return rule;
+    }
+
+    // Without the result cache, so repeated carts are really evaluated every time
+    static CouponService couponService(CouponRepository couponRepository) {
+        return couponService(couponRepository, false);
+    }
+
+    static CouponService couponService(CouponRepository couponRepository, boolean resultCache) {
+        PlatformTransactionManager transactionManager = new NoOpTransactionManager();
+        CouponUsageLedger usageLedger = new CouponUsageLedger(couponRepository, transactionManager, 10);
+        CouponCatalog catalog = new CouponCatalog(couponRepository, usageLedger, transactionManager);
+        catalog.refresh();
+
+        CouponLookupCache lookupCache = new CouponLookupCache(couponRepository, usageLedger, transactionManager,
+                new SimpleMeterRegistry(), 10_000, 300);
+
+        // No change feed: the benchmarks never write coupons
+        ApplicableCouponsCache applicableCouponsCache =
+                new ApplicableCouponsCache(new SimpleMeterRegistry(), resultCache, 64L * 1024 * 1024);
+
+        CouponService couponService = new CouponService(couponRepository, catalog, lookupCache,
+                applicableCouponsCache, null, usageLedger,
+                new IdempotencyStore(new SimpleMeterRegistry(), 100_000, 86_400), event -> { },
+                new TransactionTemplate(transactionManager),
+                new ThreadPoolTaskExecutor(),
+                new ForkJoinPool(Runtime.getRuntime().availableProcessors()),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new CouponMetrics(new SimpleMeterRegistry(), catalog, 16));
+        // The @Value defaults from application.properties
+        ReflectionTestUtils.setField(couponService, "stackingTimeBudgetMillis", 50L);
+        ReflectionTestUtils.setField(couponService, "maxBatchCarts", 10_000);
+        ReflectionTestUtils.setField(couponService, "parallelMinCandidates", 20_000);
+        return couponService;
+    }
+
+    // Serves the read methods the service and catalog use; anything else fails loudly
+    static CouponRepository repository(List<Coupon> coupons) {
+        Map<Long, Coupon> byId = new HashMap<>(coupons.size() * 2);
+        for (Coupon coupon : coupons) {
+            byId.put(coupon.getId(), coupon);
+        }
+        return (CouponRepository) Proxy.newProxyInstance(CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAll":
+                        case "findByActiveTrue":
+                            return coupons;
+                        case "findByActiveTrueAndValidUntilIsNull":
+                            return coupons.stream()
+                                    .filter(coupon -> coupon.isActive() && coupon.getValidUntil() == null)
+                                    .collect(Collectors.toList());
+                        case "findByActiveTrueAndValidUntilGreaterThanEqual":
+                            return coupons.stream()
+                                    .filter(coupon -> coupon.isActive() && coupon.getValidUntil() != null
+                                            && !coupon.getValidUntil().isBefore((LocalDateTime) args[0]))
+                                    .collect(Collectors.toList());
+                        case "findById":
+                            return Optional.ofNullable(byId.get((Long) args[0]));
+                        case "forEachMatching":
+                            coupons.forEach(coupon -> ((Consumer<CouponResponse>) args[1])
+                                    .accept(CouponResponse.fromCoupon(coupon)));
+                            return null;
+                        case "existsById":
+                            return byId.containsKey((Long) args[0]);
+                        case "reserveUsage":
+                            return reserveUsage(byId.get((Long) args[0]), (Integer) args[1]);
+                        case "findCurrentUsage":
+                            return byId.get((Long) args[0]).getCurrentUsage();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryCouponRepository";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static synchronized int reserveUsage(Coupon coupon, int delta) {
+        int usage = coupon.getCurrentUsage() != null ? coupon.getCurrentUsage() : 0;
+        if (coupon.getMaxUsage() != null && usage + delta > coupon.getMaxUsage()) {
+            return 0;
+        }
+        coupon.setCurrentUsage(usage + delta);
+        return 1;
+    }
+
+    private static void setDiscount(Coupon coupon, Random random) {
+        if (random.nextBoolean()) {
+            coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+            coupon.setDiscountValue(BigDecimal.valueOf(5 + random.nextInt(46)));
+            if (random.nextBoolean()) {
+                coupon.setMaxDiscountAmount(BigDecimal.valueOf(10 + random.nextInt(91)));
+            }
+        } else {
+            coupon.setDiscountType(Coupon.DiscountType.FIXED_AMOUNT);
+            coupon.setDiscountValue(BigDecimal.valueOf(1 + random.nextInt(50)));
+        }
+    }
+
+    private static List<Long> productIds(Random random, int count) {
+        Set<Long> ids = new LinkedHashSet<>();
+        while (ids.size() < count) {
+            ids.add(FIRST_PRODUCT_ID + random.nextInt(PRODUCT_COUNT));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.engine.CartView;
+import com.coupon.management.engine.CompiledCoupon;
+import com.coupon.management.engine.DiscountPlan;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One multi-rule BXGY coupon against a B2B-sized cart: the unit allocation that replaced
+// the per-rule averaging, cart aggregation included, next to the averaging itself as it
+// used to run in the apply path
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BxGyAllocationBenchmark {
+
+    @Param({"100", "1000"})
+    private int cartLines;
+
+    @Param({"1", "5"})
+    private int rules;
+
+    // Products named by each rule, on both sides
+    @Param({"10", "500"})
+    private int ruleProducts;
+
+    private Coupon coupon;
+    private CompiledCoupon compiled;
+    private CartRequest cartRequest;
+
+    @Setup
+    public void setUp() {
+        cartRequest = BenchmarkFixtures.cart(cartLines, 7L);
+        List<Long> cartProducts = new ArrayList<>();
+        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
+            cartProducts.add(item.getProductId());
+        }
+
+        Random random = new Random(42L);
+        coupon = new Coupon();
+        coupon.setId(1L);
+        coupon.setCode("BULK");
+        coupon.setType(Coupon.CouponType.BXGY);
+        coupon.setDiscountType(Coupon.DiscountType.FIXED_AMOUNT);
+        coupon.setDiscountValue(BigDecimal.ZERO);
+        coupon.setRepetitionLimit(rules);
+        List<BxGyRule> bxgyRules = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            BxGyRule rule = BenchmarkFixtures.rule(coupon, 2 + random.nextInt(3), pick(cartProducts, random),
+                    1, pick(cartProducts, random));
+            rule.setPriority(i + 1);
+            bxgyRules.add(rule);
+        }
+        coupon.setBxgyRules(bxgyRules);
+        compiled = CompiledCoupon.compile(coupon);
+    }
+
+    @Benchmark
+    public DiscountPlan unitAllocation() {
+        return compiled.plan(CartView.of(cartRequest));
+    }
+
+    @Benchmark
+    public BigDecimal averagedPrice() {
+        BigDecimal totalDiscount = BigDecimal.ZERO;
+        int appliedCount = 0;
+        List<BxGyRule> sortedRules = new ArrayList<>(coupon.getBxgyRules());
+        sortedRules.sort(Comparator.comparing(BxGyRule::getPriority));
+        for (BxGyRule rule : sortedRules) {
+            if (appliedCount >= coupon.getRepetitionLimit()) {
+                break;
+            }
+            BigDecimal ruleDiscount = averagedRuleDiscount(rule);
+            if (ruleDiscount.compareTo(BigDecimal.ZERO) > 0) {
+                totalDiscount = totalDiscount.add(ruleDiscount);
+                appliedCount++;
+            }
+        }
+        return totalDiscount;
+    }
+
+    private BigDecimal averagedRuleDiscount(BxGyRule rule) {
+        int buyProductCount = 0;
+        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
+            if (rule.getBuyProductIds().contains(item.getProductId())) {
+                buyProductCount += item.getQuantity();
+            }
+        }
+        int applicableTimes = buyProductCount / rule.getBuyQuantity();
+        if (applicableTimes == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal getProductValue = BigDecimal.ZERO;
+        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
+            if (rule.getGetProductIds().contains(item.getProductId())) {
+                getProductValue = getProductValue.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+            }
+        }
+        BigDecimal averageGetProductPrice = getProductValue.divide(
+                BigDecimal.valueOf(rule.getGetProductIds().size()), 2, RoundingMode.HALF_UP);
+        return averageGetProductPrice.multiply(BigDecimal.valueOf((long) applicableTimes * rule.getGetQuantity()));
+    }
+
+    private List<Long> pick(List<Long> cartProducts, Random random) {
+        List<Long> picked = new ArrayList<>(ruleProducts);
+        for (int i = 0; i < ruleProducts; i++) {
+            picked.add(cartProducts.get(random.nextInt(cartProducts.size())));
+        }
+        return picked;
+    }
+}
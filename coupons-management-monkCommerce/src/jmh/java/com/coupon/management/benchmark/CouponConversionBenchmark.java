@@ -0,0 +1,82 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.dto.CartResponse;
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.entity.Cart;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Entity to DTO conversion: the coupons streamed by GET /api/getAllCoupons and the
+// cart behind the apply-coupon response
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CouponConversionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CatalogState {
+
+        @Param({"100", "10000", "1000000"})
+        private int catalogSize;
+
+        private CouponService couponService;
+
+        @Setup
+        public void setUp() {
+            couponService = BenchmarkFixtures.couponService(
+                    BenchmarkFixtures.repository(BenchmarkFixtures.catalog(catalogSize, 42L)));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CartState {
+
+        @Param({"1", "50", "500"})
+        private int cartLines;
+
+        private Cart cart;
+
+        @Setup
+        public void setUp() {
+            Coupon coupon = new Coupon();
+            coupon.setId(1L);
+            coupon.setCode("CART10");
+            coupon.setType(Coupon.CouponType.CART_WISE);
+            coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+            coupon.setDiscountValue(BigDecimal.TEN);
+            List<Coupon> coupons = new ArrayList<>();
+            coupons.add(coupon);
+            CouponService couponService = BenchmarkFixtures.couponService(BenchmarkFixtures.repository(coupons));
+            cart = couponService.applyCoupon(1L, BenchmarkFixtures.cart(cartLines, 7L));
+        }
+    }
+
+    @Benchmark
+    public void allCoupons(CatalogState state, Blackhole blackhole) {
+        state.couponService.forEachCoupon(new CouponFilter(), blackhole::consume);
+    }
+
+    @Benchmark
+    public CartResponse cartResponse(CartState state) {
+        return CartResponse.fromCart(state.cart);
+    }
+}
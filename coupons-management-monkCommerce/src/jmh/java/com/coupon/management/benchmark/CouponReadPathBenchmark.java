@@ -0,0 +1,111 @@
+package com.coupon.management.benchmark;
+
+import com.coupon.management.CouponManagementStart;
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// getAllCoupons the way it used to run, managed entities loaded in a read-write
+// transaction and converted afterwards, against the read-only projection streamed from
+// a cursor that replaced it. Both go through the real Spring context on in-memory H2; -prof gc (the default
+// jmh.args) reports the bytes each call allocates, snapshots included.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CouponReadPathBenchmark {
+
+    private static final int INSERT_BATCH = 5_000;
+
+    @Param({"1000", "10000", "100000"})
+    private int storedCoupons;
+
+    private ConfigurableApplicationContext context;
+    private CouponRepository couponRepository;
+    private CouponService couponService;
+    private TransactionTemplate readWriteTransaction;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(CouponManagementStart.class)
+                .web(WebApplicationType.NONE)
+                // Arguments, so they win over application.properties
+                .run("--coupon.sample-data.enabled=false",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+        couponRepository = context.getBean(CouponRepository.class);
+        couponService = context.getBean(CouponService.class);
+        readWriteTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        populate(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // What the class-level @Transactional and the controller conversion used to do
+    @Benchmark
+    public List<CouponResponse> managedEntities() {
+        return readWriteTransaction.execute(status -> {
+            List<Coupon> coupons = couponRepository.findAll();
+            List<CouponResponse> responses = new ArrayList<>(coupons.size());
+            for (Coupon coupon : coupons) {
+                responses.add(CouponResponse.fromCoupon(coupon));
+            }
+            return responses;
+        });
+    }
+
+    @Benchmark
+    public void readOnlyProjection(Blackhole blackhole) {
+        couponService.forEachCoupon(new CouponFilter(), blackhole::consume);
+    }
+
+    private void populate(JdbcTemplate jdbcTemplate) {
+        Timestamp from = Timestamp.valueOf(LocalDateTime.now().minusDays(1));
+        Timestamp until = Timestamp.valueOf(LocalDateTime.now().plusDays(30));
+        List<Object[]> rows = new ArrayList<>(INSERT_BATCH);
+        for (int id = 1; id <= storedCoupons; id++) {
+            rows.add(new Object[]{id, "C" + id, from, until});
+            if (rows.size() == INSERT_BATCH || id == storedCoupons) {
+                jdbcTemplate.batchUpdate("INSERT INTO coupons (id, code, name, description, type, discount_value, "
+                        + "discount_type, active, valid_from, valid_until, max_usage, current_usage, repetition_limit) "
+                        + "VALUES (?, ?, 'Stored coupon', 'Benchmark data', 'CART_WISE', 10, 'PERCENTAGE', TRUE, "
+                        + "?, ?, 100, 0, 1)", rows);
+                rows.clear();
+            }
+        }
+    }
+}
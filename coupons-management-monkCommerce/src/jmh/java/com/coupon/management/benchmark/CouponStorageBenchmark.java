@@ -0,0 +1,156 @@
+package com.coupon.management.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Query latency against the prod schema (file-backed H2 migrated by Flyway) as the
+// number of stored coupons grows. A fixed 1,000 coupons are live; the rest is history:
+// one in five deactivated, the others still active but expired.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CouponStorageBenchmark {
+
+    private static final int LIVE_COUPONS = 1_000;
+    private static final int INSERT_BATCH = 5_000;
+    private static final String[] TYPES = {"CART_WISE", "PRODUCT_WISE", "BXGY"};
+
+    // The SQL Hibernate issues for the repository methods, minus the column aliases
+    private static final String NOT_EXPIRED_OPEN_ENDED =
+            "SELECT * FROM coupons c WHERE c.active = TRUE AND c.valid_until IS NULL";
+    private static final String NOT_EXPIRED_BOUNDED =
+            "SELECT * FROM coupons c WHERE c.active = TRUE AND c.valid_until >= ?";
+    private static final String BY_CODE = "SELECT * FROM coupons c WHERE c.code = ?";
+    private static final String BY_PRODUCT =
+            "SELECT coupon_id FROM coupon_applicable_products WHERE product_id = ?";
+
+    @Param({"10000", "100000", "1000000"})
+    private int storedCoupons;
+
+    private Path directory;
+    private Connection connection;
+    private final Random random = new Random(11L);
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("coupon-storage-benchmark");
+        String url = "jdbc:h2:file:" + directory.resolve("coupons").toAbsolutePath();
+        Flyway.configure().dataSource(url, "sa", "").load().migrate();
+        connection = DriverManager.getConnection(url, "sa", "");
+        populate();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        try (PreparedStatement shutdown = connection.prepareStatement("SHUTDOWN")) {
+            shutdown.execute();
+        }
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // CouponCatalog.refresh: active coupons that have not expired
+    @Benchmark
+    public int catalogLoad() throws SQLException {
+        int rows = count(connection.prepareStatement(NOT_EXPIRED_OPEN_ENDED));
+        PreparedStatement bounded = connection.prepareStatement(NOT_EXPIRED_BOUNDED);
+        bounded.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+        return rows + count(bounded);
+    }
+
+    @Benchmark
+    public int findByCode() throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(BY_CODE);
+        statement.setString(1, "C" + (1 + random.nextInt(storedCoupons)));
+        return count(statement);
+    }
+
+    @Benchmark
+    public int couponsForProduct() throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(BY_PRODUCT);
+        statement.setLong(1, BenchmarkFixtures.FIRST_PRODUCT_ID + random.nextInt(BenchmarkFixtures.PRODUCT_COUNT));
+        return count(statement);
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (PreparedStatement closing = statement; ResultSet resultSet = closing.executeQuery()) {
+            while (resultSet.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private void populate() throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        connection.setAutoCommit(false);
+        try (PreparedStatement coupons = connection.prepareStatement(
+                "INSERT INTO coupons (id, code, name, description, type, discount_value, discount_type, active, "
+                        + "valid_from, valid_until, max_usage, current_usage, repetition_limit) "
+                        + "VALUES (?, ?, 'Stored coupon', 'Benchmark data', ?, 10, 'PERCENTAGE', ?, ?, ?, NULL, 0, 1)");
+             PreparedStatement products = connection.prepareStatement(
+                     "INSERT INTO coupon_applicable_products (coupon_id, product_id) VALUES (?, ?)")) {
+            for (int id = 1; id <= storedCoupons; id++) {
+                boolean live = id <= LIVE_COUPONS;
+                String type = TYPES[id % TYPES.length];
+                coupons.setLong(1, id);
+                coupons.setString(2, "C" + id);
+                coupons.setString(3, type);
+                coupons.setBoolean(4, live || id % 5 != 0);
+                coupons.setTimestamp(5, Timestamp.valueOf(now.minusDays(400)));
+                coupons.setTimestamp(6, live && id % 10 == 0 ? null
+                        : Timestamp.valueOf(live ? now.plusDays(30) : now.minusDays(1 + random.nextInt(365))));
+                coupons.addBatch();
+                if (type.equals("PRODUCT_WISE")) {
+                    for (int i = 0; i < 2; i++) {
+                        products.setLong(1, id);
+                        products.setLong(2, BenchmarkFixtures.FIRST_PRODUCT_ID
+                                + random.nextInt(BenchmarkFixtures.PRODUCT_COUNT));
+                        products.addBatch();
+                    }
+                }
+                if (id % INSERT_BATCH == 0 || id == storedCoupons) {
+                    coupons.executeBatch();
+                    products.executeBatch();
+                    connection.commit();
+                }
+            }
+        }
+        connection.setAutoCommit(true);
+        try (PreparedStatement analyze = connection.prepareStatement("ANALYZE")) {
+            analyze.execute();
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.coupon.management;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class CouponManagementStart {
     public static void main(String[] args) {
         SpringApplication.run(CouponManagementStart.class, args);
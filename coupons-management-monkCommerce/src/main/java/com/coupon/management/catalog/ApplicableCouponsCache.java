@@ -0,0 +1,145 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.dto.ApplicableCouponsResponse;
+import com.coupon.management.engine.CartView;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Applicable-coupon responses for carts seen before. A cart is keyed by its aggregated
+// lines (product, quantity, line total), so line order, split lines and product names
+// do not matter, together with the requested limits, the catalog version and the
+// snapshot's validity epoch of the evaluation time. Every coupon write rebuilds the
+// catalog under a new version, so older entries can no longer be hit; the first lookup
+// that sees the new version drops them. Responses are shared between hits and must not
+// be modified.
+@Component
+public class ApplicableCouponsCache {
+
+    // Rough heap cost of an entry: key and cache node, each aggregated cart line, and
+    // each coupon in the response with its strings
+    private static final int ENTRY_BYTES = 200;
+    private static final int LINE_BYTES = 20;
+    private static final int COUPON_BYTES = 600;
+
+    private final boolean enabled;
+    private final Cache<Key, ApplicableCouponsResponse> entries;
+    private final AtomicLong catalogVersion = new AtomicLong();
+
+    public ApplicableCouponsCache(MeterRegistry registry,
+                                  @Value("${coupon.result-cache.enabled:true}") boolean enabled,
+                                  @Value("${coupon.result-cache.maximum-bytes:67108864}") long maximumBytes) {
+        this.enabled = enabled;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(ApplicableCouponsCache::weigh)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, entries, "coupon.applicable");
+        Gauge.builder("coupon.applicable.cache.hit.ratio", entries, cache -> cache.stats().hitRate())
+                .description("Share of applicable-coupon lookups answered without evaluating")
+                .register(registry);
+        // Always bounded by weight, so the eviction policy and its weighted size exist
+        Gauge.builder("coupon.applicable.cache.memory", entries,
+                        cache -> cache.policy().eviction().get().weightedSize().getAsLong())
+                .description("Estimated heap held by cached applicable-coupon responses")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // The cached response for this cart, or the one evaluation computes, which is then kept
+    public ApplicableCouponsResponse get(CatalogSnapshot snapshot, CartView cart, Integer limit, Integer nearMisses,
+                                         LocalDateTime currentTime, Supplier<ApplicableCouponsResponse> evaluation) {
+        if (!enabled) {
+            return evaluation.get();
+        }
+        long seen = catalogVersion.get();
+        if (snapshot.getVersion() > seen && catalogVersion.compareAndSet(seen, snapshot.getVersion())) {
+            entries.invalidateAll();
+        }
+
+        Key key = new Key(cart, limit, nearMisses, snapshot.getVersion(), snapshot.validityEpoch(currentTime));
+        ApplicableCouponsResponse cached = entries.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        // Evaluated outside the cache, so a slow cart never blocks lookups of other keys
+        ApplicableCouponsResponse response = evaluation.get();
+        entries.put(key, response);
+        return response;
+    }
+
+    private static int weigh(Key key, ApplicableCouponsResponse response) {
+        int coupons = response.getApplicableCoupons().size()
+                + (response.getNearMisses() != null ? response.getNearMisses().size() : 0);
+        long bytes = ENTRY_BYTES + (long) LINE_BYTES * key.productIds.length + (long) COUPON_BYTES * coupons;
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static final class Key {
+        private final long[] productIds;
+        private final int[] quantities;
+        private final long[] lineTotals;
+        private final Integer limit;
+        private final Integer nearMisses;
+        private final long catalogVersion;
+        private final int validityEpoch;
+        private final int hash;
+
+        Key(CartView cart, Integer limit, Integer nearMisses, long catalogVersion, int validityEpoch) {
+            this.productIds = new long[cart.size()];
+            this.quantities = new int[cart.size()];
+            this.lineTotals = new long[cart.size()];
+            for (int line = 0; line < cart.size(); line++) {
+                productIds[line] = cart.productId(line);
+                quantities[line] = cart.quantity(line);
+                lineTotals[line] = cart.lineTotal(line);
+            }
+            this.limit = limit;
+            this.nearMisses = nearMisses;
+            this.catalogVersion = catalogVersion;
+            this.validityEpoch = validityEpoch;
+            int hash = Arrays.hashCode(productIds);
+            hash = 31 * hash + Arrays.hashCode(quantities);
+            hash = 31 * hash + Arrays.hashCode(lineTotals);
+            hash = 31 * hash + Objects.hashCode(limit);
+            hash = 31 * hash + Objects.hashCode(nearMisses);
+            hash = 31 * hash + Long.hashCode(catalogVersion);
+            this.hash = 31 * hash + validityEpoch;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash
+                    && catalogVersion == key.catalogVersion
+                    && validityEpoch == key.validityEpoch
+                    && Objects.equals(limit, key.limit)
+                    && Objects.equals(nearMisses, key.nearMisses)
+                    && Arrays.equals(productIds, key.productIds)
+                    && Arrays.equals(quantities, key.quantities)
+                    && Arrays.equals(lineTotals, key.lineTotals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.engine.CompiledCoupon;
+import com.coupon.management.entity.Coupon;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Immutable view of the active coupons, replaced as a whole on every rebuild
+@Getter
+public class CatalogSnapshot {
+
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(0L, Collections.<CompiledCoupon>emptyList());
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final long version;
+    private final List<CompiledCoupon> coupons;
+    private final LocalDateTime builtAt;
+
+    // Positions into coupons: CART_WISE coupons apply to any cart, the others only
+    // to carts holding one of their trigger products (applicable ids, or BxGy buy ids)
+    private final int[] cartWisePositions;
+    private final Map<Long, int[]> productIndex;
+    private final int[] typeCounts = new int[Coupon.CouponType.values().length];
+    // Sorted times at which some coupon becomes or stops being available; evaluations
+    // at any two times between the same neighbouring boundaries see the same coupons
+    private final LocalDateTime[] validityBoundaries;
+
+    public CatalogSnapshot(long version, List<CompiledCoupon> coupons) {
+        this.version = version;
+        this.coupons = Collections.unmodifiableList(coupons);
+        this.builtAt = LocalDateTime.now();
+
+        List<Integer> cartWise = new ArrayList<>();
+        Map<Long, List<Integer>> index = new HashMap<>();
+        List<LocalDateTime> boundaries = new ArrayList<>();
+        for (int position = 0; position < coupons.size(); position++) {
+            typeCounts[coupons.get(position).getType().ordinal()]++;
+            addValidityBoundaries(coupons.get(position), boundaries);
+            List<Long> triggers = coupons.get(position).triggerProductIds();
+            if (triggers.isEmpty()) {
+                cartWise.add(position);
+                continue;
+            }
+            for (Long productId : new LinkedHashSet<>(triggers)) {
+                index.computeIfAbsent(productId, id -> new ArrayList<>()).add(position);
+            }
+        }
+        this.cartWisePositions = toArray(cartWise);
+        Map<Long, int[]> productIndex = new HashMap<>(index.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : index.entrySet()) {
+            productIndex.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        this.productIndex = Collections.unmodifiableMap(productIndex);
+        this.validityBoundaries = boundaries.toArray(new LocalDateTime[0]);
+        Arrays.sort(validityBoundaries);
+    }
+
+    public int size() {
+        return coupons.size();
+    }
+
+    public int count(Coupon.CouponType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    // Number of validity boundaries at or before time; results evaluated at two times with
+    // the same epoch are interchangeable for this snapshot
+    public int validityEpoch(LocalDateTime time) {
+        int low = 0;
+        int high = validityBoundaries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (validityBoundaries[middle].isAfter(time)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    // Coupons that can give a discount on a cart with these products, in catalog order
+    public List<CompiledCoupon> candidatesFor(long[] productIds) {
+        int[] positions = Arrays.copyOf(cartWisePositions, cartWisePositions.length + 16);
+        int count = cartWisePositions.length;
+        for (long productId : productIds) {
+            int[] matches = productIndex.getOrDefault(productId, NO_POSITIONS);
+            if (count + matches.length > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, count + matches.length));
+            }
+            System.arraycopy(matches, 0, positions, count, matches.length);
+            count += matches.length;
+        }
+        Arrays.sort(positions, 0, count);
+
+        List<CompiledCoupon> candidates = new ArrayList<>(count);
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            if (positions[i] != previous) {
+                candidates.add(coupons.get(positions[i]));
+                previous = positions[i];
+            }
+        }
+        return candidates;
+    }
+
+    // A coupon is available from validFrom through validUntil inclusive
+    private static void addValidityBoundaries(CompiledCoupon coupon, List<LocalDateTime> boundaries) {
+        if (coupon.getValidFrom() != null) {
+            boundaries.add(coupon.getValidFrom());
+        }
+        if (coupon.getValidUntil() != null) {
+            boundaries.add(coupon.getValidUntil().plusNanos(1));
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
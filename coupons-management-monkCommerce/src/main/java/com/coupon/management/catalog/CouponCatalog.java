@@ -0,0 +1,202 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.engine.CompiledCoupon;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.usage.CouponUsageLedger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+@Slf4j
+public class CouponCatalog {
+
+    private final CouponRepository couponRepository;
+    private final CouponUsageLedger usageLedger;
+    private final TransactionTemplate readTransaction;
+
+    // Readers only ever dereference this field, writers swap it after a full rebuild
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.EMPTY;
+
+    // Changes made on this node are applied here rather than on the request thread that
+    // made them; changes arriving while an update runs are merged into the next one
+    private final ExecutorService updateExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("coupon-catalog-"));
+    private final Set<Long> pendingIds = new HashSet<>();
+    private boolean pendingRefresh;
+    private boolean updateQueued;
+
+    public CouponCatalog(CouponRepository couponRepository, CouponUsageLedger usageLedger,
+                         PlatformTransactionManager transactionManager) {
+        this.couponRepository = couponRepository;
+        this.usageLedger = usageLedger;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        // Listeners run after the writing transaction committed, so the rebuild needs its own
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public CatalogSnapshot snapshot() {
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    // A single coupon is reloaded on its own; only bulk changes rebuild the whole catalog
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponsChanged(CouponCatalogChangedEvent event) {
+        log.debug("Coupon {} changed, updating catalog", event.getCouponId());
+        synchronized (pendingIds) {
+            if (event.getCouponId() == null) {
+                pendingRefresh = true;
+            } else {
+                pendingIds.add(event.getCouponId());
+            }
+            if (updateQueued) {
+                return;
+            }
+            updateQueued = true;
+        }
+        updateExecutor.execute(this::applyPending);
+    }
+
+    @PreDestroy
+    public void stop() {
+        updateExecutor.shutdown();
+    }
+
+    private void applyPending() {
+        Set<Long> couponIds;
+        boolean everything;
+        synchronized (pendingIds) {
+            couponIds = new HashSet<>(pendingIds);
+            everything = pendingRefresh;
+            pendingIds.clear();
+            pendingRefresh = false;
+            updateQueued = false;
+        }
+        try {
+            if (everything) {
+                refresh();
+            } else {
+                applyChanges(couponIds);
+            }
+        } catch (RuntimeException e) {
+            log.error("Coupon catalog update failed, keeping version {}", snapshot.getVersion(), e);
+        }
+    }
+
+    // Serialized so that an older rebuild can never overwrite a newer one
+    public synchronized void refresh() {
+        List<CompiledCoupon> coupons = readTransaction.execute(status -> {
+            // Expired coupons can never become available again, so they are left in the table
+            LocalDateTime now = LocalDateTime.now();
+            List<Coupon> active = new ArrayList<>(couponRepository.findByActiveTrueAndValidUntilIsNull());
+            active.addAll(couponRepository.findByActiveTrueAndValidUntilGreaterThanEqual(now));
+            active.sort(Comparator.comparing(Coupon::getId));
+
+            List<CompiledCoupon> compiled = new ArrayList<>(active.size());
+            for (Coupon coupon : active) {
+                compiled.add(compile(coupon));
+            }
+            return compiled;
+        });
+        snapshot = new CatalogSnapshot(snapshot.getVersion() + 1, coupons);
+        log.info("Coupon catalog rebuilt: version {}, {} active coupons", snapshot.getVersion(), snapshot.size());
+    }
+
+    // Reloads only the given coupons and swaps them into the current snapshot; used for
+    // changes made on other nodes, which arrive as individual coupon ids
+    public synchronized void applyChanges(Set<Long> couponIds) {
+        List<CompiledCoupon> reloaded = readTransaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<CompiledCoupon> compiled = new ArrayList<>(couponIds.size());
+            for (Coupon coupon : couponRepository.findAllById(couponIds)) {
+                if (coupon.isActive() && (coupon.getValidUntil() == null || !coupon.getValidUntil().isBefore(now))) {
+                    compiled.add(compile(coupon));
+                }
+            }
+            return compiled;
+        });
+        List<CompiledCoupon> coupons = new ArrayList<>(snapshot.size() + reloaded.size());
+        for (CompiledCoupon coupon : snapshot.getCoupons()) {
+            if (!couponIds.contains(coupon.getId())) {
+                coupons.add(coupon);
+            }
+        }
+        coupons.addAll(reloaded);
+        coupons.sort(Comparator.comparing(CompiledCoupon::getId));
+        snapshot = new CatalogSnapshot(snapshot.getVersion() + 1, coupons);
+        log.info("Coupon catalog updated for {} changed coupons: version {}, {} active coupons",
+                couponIds.size(), snapshot.getVersion(), snapshot.size());
+    }
+
+    private CompiledCoupon compile(Coupon coupon) {
+        Coupon copy = detachedCopy(coupon);
+        // The table also counts usages leased by this instance but not handed out yet
+        copy.setCurrentUsage(usageLedger.currentUsage(coupon.getId(), coupon.getCurrentUsage()));
+        return CompiledCoupon.compile(copy);
+    }
+
+    // Fully initialized copy that is safe to use outside the loading transaction
+    static Coupon detachedCopy(Coupon source) {
+        Coupon coupon = new Coupon();
+        coupon.setId(source.getId());
+        coupon.setCode(source.getCode());
+        coupon.setName(source.getName());
+        coupon.setDescription(source.getDescription());
+        coupon.setType(source.getType());
+        coupon.setDiscountValue(source.getDiscountValue());
+        coupon.setDiscountType(source.getDiscountType());
+        coupon.setActive(source.isActive());
+        coupon.setValidFrom(source.getValidFrom());
+        coupon.setValidUntil(source.getValidUntil());
+        coupon.setMinimumCartValue(source.getMinimumCartValue());
+        coupon.setMaxUsage(source.getMaxUsage());
+        coupon.setCurrentUsage(source.getCurrentUsage());
+        coupon.setMaxDiscountAmount(source.getMaxDiscountAmount());
+        coupon.setRepetitionLimit(source.getRepetitionLimit());
+        coupon.setCreatedAt(source.getCreatedAt());
+        coupon.setUpdatedAt(source.getUpdatedAt());
+        if (source.getApplicableProductIds() != null) {
+            coupon.setApplicableProductIds(new ArrayList<>(source.getApplicableProductIds()));
+        }
+        if (source.getBxgyRules() != null) {
+            List<BxGyRule> rules = new ArrayList<>();
+            for (BxGyRule sourceRule : source.getBxgyRules()) {
+                BxGyRule rule = new BxGyRule();
+                rule.setId(sourceRule.getId());
+                rule.setCoupon(coupon);
+                rule.setBuyQuantity(sourceRule.getBuyQuantity());
+                rule.setBuyProductIds(new ArrayList<>(sourceRule.getBuyProductIds()));
+                rule.setGetQuantity(sourceRule.getGetQuantity());
+                rule.setGetProductIds(new ArrayList<>(sourceRule.getGetProductIds()));
+                rule.setPriority(sourceRule.getPriority());
+                rules.add(rule);
+            }
+            coupon.setBxgyRules(rules);
+        }
+        return coupon;
+    }
+}
@@ -0,0 +1,12 @@
+package com.coupon.management.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published by CouponService whenever a coupon write is about to commit
+@Getter
+@AllArgsConstructor
+public class CouponCatalogChangedEvent {
+    // Null when a bulk operation changed many coupons at once
+    private final Long couponId;
+}
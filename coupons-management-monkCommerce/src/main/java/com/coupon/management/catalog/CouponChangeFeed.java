@@ -0,0 +1,325 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.dto.CouponChangeResponse;
+import com.coupon.management.entity.CouponChange;
+import com.coupon.management.repository.CouponChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Cross-node change feed over the coupon_changes outbox. Writers append a row inside
+// their own transaction; every node tails the table by id, applies other nodes' changes
+// to its catalog and lookup cache (its own were applied locally at commit) and relays
+// every change to its SSE subscribers.
+//
+// Identity values are handed out at insert, not at commit, so a row with a lower id can
+// become visible after a higher one. Skipped ids are therefore re-read as gaps until they
+// show up or gapTimeoutMillis passes, which covers transactions that rolled back.
+//
+// Polling runs on the feed's own thread and SSE writes on couponChangeSendExecutor, so
+// neither a large catalog reload nor a slow subscriber holds up Spring's shared
+// scheduler, and a subscriber stuck in one write for sendTimeoutMillis is dropped.
+@Component
+@Slf4j
+public class CouponChangeFeed {
+
+    private static final int MAX_OPEN_GAPS = 10_000;
+
+    private final CouponChangeRepository changeRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponLookupCache couponLookupCache;
+    private final TransactionTemplate readTransaction;
+    private final ThreadPoolTaskExecutor sendExecutor;
+    private final String nodeId;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Not a bean: a TaskScheduler bean would become the scheduler of every @Scheduled method
+    private final ThreadPoolTaskScheduler pollScheduler = new ThreadPoolTaskScheduler();
+    private boolean polling;
+
+    // Highest id seen so far, and the ids below it not seen yet (with when they were noticed)
+    private long cursor;
+    private final Map<Long, Long> openGaps = new LinkedHashMap<>();
+
+    @Value("${coupon.changes.batch-size:500}")
+    private int batchSize;
+
+    @Value("${coupon.changes.gap-timeout-ms:10000}")
+    private long gapTimeoutMillis;
+
+    @Value("${coupon.changes.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${coupon.changes.sse-timeout-ms:1800000}")
+    private long sseTimeoutMillis;
+
+    @Value("${coupon.changes.send-timeout-ms:5000}")
+    private long sendTimeoutMillis;
+
+    @Value("${coupon.changes.poll-interval-ms:1000}")
+    private long pollIntervalMillis;
+
+    public CouponChangeFeed(CouponChangeRepository changeRepository, CouponCatalog couponCatalog,
+                            CouponLookupCache couponLookupCache, PlatformTransactionManager transactionManager,
+                            ThreadPoolTaskExecutor couponChangeSendExecutor,
+                            @Value("${coupon.node-id:${random.uuid}}") String nodeId) {
+        this.changeRepository = changeRepository;
+        this.couponCatalog = couponCatalog;
+        this.couponLookupCache = couponLookupCache;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.sendExecutor = couponChangeSendExecutor;
+        this.nodeId = nodeId;
+        this.pollScheduler.setPoolSize(1);
+        this.pollScheduler.setThreadNamePrefix("coupon-changes-");
+    }
+
+    // Before the catalog's first load, so nothing committed after that load can be missed
+    @PostConstruct
+    public void start() {
+        cursor = changeRepository.findLatestId();
+        log.info("Coupon change feed on node {} starting after version {}", nodeId, cursor);
+    }
+
+    // Polling starts where @Scheduled methods would, once the context is refreshed; a
+    // failed poll is logged by the scheduler and the next one runs as usual
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void startPolling() {
+        if (!polling) {
+            polling = true;
+            pollScheduler.initialize();
+            pollScheduler.scheduleWithFixedDelay(this::poll, Duration.ofMillis(pollIntervalMillis));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        pollScheduler.shutdown();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    // Must run in the transaction that makes the change, so both commit or neither does
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(Long couponId, CouponChange.ChangeType changeType) {
+        changeRepository.save(new CouponChange(null, couponId, changeType, nodeId, LocalDateTime.now()));
+    }
+
+    public SseEmitter subscribe(Long afterVersion) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, afterVersion != null ? afterVersion : Long.MAX_VALUE);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    public synchronized void poll() {
+        long previousCursor = cursor;
+        List<CouponChange> changes = readTransaction.execute(status -> read());
+        if (!changes.isEmpty()) {
+            apply(changes);
+        }
+        publish(changes, previousCursor);
+    }
+
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT1M")
+    @Transactional
+    public void purge() {
+        int removed = changeRepository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+        if (removed > 0) {
+            log.info("Removed {} coupon changes older than {} hours", removed, retentionHours);
+        }
+    }
+
+    private List<CouponChange> read() {
+        List<CouponChange> changes = new ArrayList<>();
+        if (!openGaps.isEmpty()) {
+            for (CouponChange late : changeRepository.findByIdInOrderByIdAsc(new ArrayList<>(openGaps.keySet()))) {
+                openGaps.remove(late.getId());
+                changes.add(late);
+            }
+            long expiry = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+            openGaps.values().removeIf(noticed -> noticed < expiry);
+        }
+        for (CouponChange change : changeRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, batchSize))) {
+            long now = System.nanoTime();
+            for (long missing = cursor + 1; missing < change.getId() && openGaps.size() < MAX_OPEN_GAPS; missing++) {
+                openGaps.put(missing, now);
+            }
+            cursor = change.getId();
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    private void apply(List<CouponChange> changes) {
+        Set<Long> changedIds = new HashSet<>();
+        boolean everything = false;
+        for (CouponChange change : changes) {
+            if (nodeId.equals(change.getNodeId())) {
+                continue;
+            }
+            if (change.getCouponId() == null) {
+                everything = true;
+            } else {
+                changedIds.add(change.getCouponId());
+            }
+        }
+        if (everything) {
+            couponLookupCache.invalidateAll();
+            couponCatalog.refresh();
+        } else if (!changedIds.isEmpty()) {
+            changedIds.forEach(couponLookupCache::invalidate);
+            couponCatalog.applyChanges(changedIds);
+        }
+    }
+
+    // Only queues the batch; the writes happen on the send executor, one subscriber at a time
+    private void publish(List<CouponChange> changes, long previousCursor) {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long sendingSince = subscriber.sendingSince;
+            if (sendingSince != 0L && now - sendingSince > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis)) {
+                drop(subscriber, new TimeoutException("No write completed in " + sendTimeoutMillis + " ms"));
+                continue;
+            }
+            if (changes.isEmpty() && subscriber.started) {
+                continue;
+            }
+            subscriber.started = true;
+            subscriber.batches.add(new Batch(previousCursor, changes, cursor));
+            if (subscriber.draining.compareAndSet(false, true)) {
+                try {
+                    sendExecutor.execute(() -> drain(subscriber));
+                } catch (TaskRejectedException e) {
+                    drop(subscriber, e);
+                }
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                Batch batch = subscriber.batches.poll();
+                if (batch == null) {
+                    subscriber.draining.set(false);
+                    // A batch queued after the poll above but before the flag was cleared
+                    if (subscriber.batches.isEmpty() || !subscriber.draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                subscriber.sendingSince = System.nanoTime();
+                send(subscriber, batch);
+                subscriber.sendingSince = 0L;
+            }
+        } catch (IOException | IllegalStateException e) {
+            drop(subscriber, e);
+        }
+    }
+
+    // Subscribers that asked for older versions are caught up from the table first
+    private void send(Subscriber subscriber, Batch batch) throws IOException {
+        if (subscriber.sentUpTo == Long.MAX_VALUE) {
+            subscriber.sentUpTo = batch.previousCursor;
+        }
+        while (subscriber.sentUpTo < batch.previousCursor) {
+            long from = subscriber.sentUpTo;
+            List<CouponChange> backlog = readTransaction.execute(status ->
+                    changeRepository.findByIdGreaterThanOrderByIdAsc(from, PageRequest.of(0, batchSize)));
+            if (backlog.isEmpty()) {
+                subscriber.sentUpTo = batch.previousCursor;
+                break;
+            }
+            for (CouponChange change : backlog) {
+                if (change.getId() <= batch.previousCursor) {
+                    subscriber.send(change);
+                }
+            }
+            subscriber.sentUpTo = Math.min(batch.previousCursor, backlog.get(backlog.size() - 1).getId());
+        }
+        // Late rows from closed gaps are below the cursor but have not been sent yet
+        for (CouponChange change : batch.changes) {
+            subscriber.send(change);
+        }
+        subscriber.sentUpTo = Math.max(subscriber.sentUpTo, batch.cursor);
+    }
+
+    // Completing with an error also fails a write that is still blocked on the connection
+    private void drop(Subscriber subscriber, Exception cause) {
+        log.debug("Dropping coupon change subscriber: {}", cause.getMessage());
+        subscribers.remove(subscriber);
+        subscriber.batches.clear();
+        subscriber.emitter.completeWithError(cause);
+    }
+
+    // One poll's new rows, with the cursor before and after it
+    private static final class Batch {
+        private final long previousCursor;
+        private final List<CouponChange> changes;
+        private final long cursor;
+
+        private Batch(long previousCursor, List<CouponChange> changes, long cursor) {
+            this.previousCursor = previousCursor;
+            this.changes = changes;
+            this.cursor = cursor;
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // Only touched by the poll thread
+        private boolean started;
+        // When the write in progress started, 0 while idle
+        private volatile long sendingSince;
+        // Long.MAX_VALUE until the first batch: then it starts from the live position.
+        // Only touched by the drain in progress
+        private long sentUpTo;
+
+        private Subscriber(SseEmitter emitter, long sentUpTo) {
+            this.emitter = emitter;
+            this.sentUpTo = sentUpTo;
+        }
+
+        private void send(CouponChange change) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(change.getId()))
+                    .name("coupon-change")
+                    .data(CouponChangeResponse.fromChange(change)));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.usage.CouponUsageLedger;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Read-through cache for single-coupon lookups by id and by code, covering every coupon
+// (the catalog only holds the active, unexpired ones). Entries are detached copies and
+// every read hands out its own copy with the ledger's usage, so callers may modify what
+// they get. Writes invalidate after they commit, through the catalog change event.
+@Component
+@Slf4j
+public class CouponLookupCache {
+
+    private final CouponRepository couponRepository;
+    private final CouponUsageLedger usageLedger;
+    private final TransactionTemplate readTransaction;
+    private final Cache<Long, Coupon> byId;
+    // Codes resolve to ids, so a changed coupon only ever has to be dropped from byId
+    private final Cache<String, Long> idsByCode;
+
+    public CouponLookupCache(CouponRepository couponRepository, CouponUsageLedger usageLedger,
+                             PlatformTransactionManager transactionManager, MeterRegistry registry,
+                             @Value("${coupon.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${coupon.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.couponRepository = couponRepository;
+        this.usageLedger = usageLedger;
+        // Joins a caller's transaction rather than holding a second connection next to it
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.idsByCode = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, byId, "coupon.lookup.by-id");
+        CaffeineCacheMetrics.monitor(registry, idsByCode, "coupon.lookup.by-code");
+    }
+
+    public Optional<Coupon> findById(Long id) {
+        // Misses are not cached, a coupon created later is found on its first lookup
+        Coupon cached = byId.get(id, key -> readTransaction.execute(status ->
+                couponRepository.findById(key).map(CouponCatalog::detachedCopy).orElse(null)));
+        return Optional.ofNullable(cached).map(this::copyWithCurrentUsage);
+    }
+
+    public Optional<Coupon> findByCode(String code) {
+        Long id = idsByCode.get(code, key -> readTransaction.execute(status ->
+                couponRepository.findByCode(key).map(coupon -> {
+                    byId.put(coupon.getId(), CouponCatalog.detachedCopy(coupon));
+                    return coupon.getId();
+                }).orElse(null)));
+        return id != null ? findById(id) : Optional.empty();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponsChanged(CouponCatalogChangedEvent event) {
+        if (event.getCouponId() == null) {
+            invalidateAll();
+        } else {
+            invalidate(event.getCouponId());
+        }
+    }
+
+    public void invalidate(Long couponId) {
+        log.debug("Coupon {} changed, dropping cached lookups", couponId);
+        byId.invalidate(couponId);
+        // Writes are rare next to reads, so a scan of the bounded code map is fine here
+        idsByCode.asMap().values().removeIf(couponId::equals);
+    }
+
+    public void invalidateAll() {
+        byId.invalidateAll();
+        idsByCode.invalidateAll();
+    }
+
+    private Coupon copyWithCurrentUsage(Coupon cached) {
+        Coupon coupon = CouponCatalog.detachedCopy(cached);
+        coupon.setCurrentUsage(usageLedger.currentUsage(coupon.getId(), cached.getCurrentUsage()));
+        return coupon;
+    }
+}
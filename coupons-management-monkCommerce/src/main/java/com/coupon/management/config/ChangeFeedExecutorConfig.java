@@ -0,0 +1,28 @@
+package com.coupon.management.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ChangeFeedExecutorConfig {
+
+    // Writes to coupon change subscribers, see CouponChangeFeed. Each subscriber has at
+    // most one task queued or running, so the queue only fills up with that many
+    // subscribers; the ones that do not fit are dropped and reconnect with Last-Event-ID
+    @Bean
+    public ThreadPoolTaskExecutor couponChangeSendExecutor(
+            @Value("${coupon.changes.send-threads:2}") int threads,
+            @Value("${coupon.changes.send-queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("coupon-sse-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
@@ -6,13 +6,17 @@ import com.coupon.management.repository.CouponRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 
+// Replaces the table contents with the sample coupons on every start; turned off with
+// coupon.sample-data.enabled=false (the prod profile does)
 @Component
+@ConditionalOnProperty(name = "coupon.sample-data.enabled", havingValue = "true", matchIfMissing = true)
 @RequiredArgsConstructor
 @Slf4j
 public class DataInitializer implements CommandLineRunner {
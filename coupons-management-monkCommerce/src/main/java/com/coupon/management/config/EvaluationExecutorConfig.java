@@ -0,0 +1,45 @@
+package com.coupon.management.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class EvaluationExecutorConfig {
+
+    // Bounded pool for batch evaluation; when the queue is full the submitting request
+    // thread evaluates the chunk itself, which throttles callers instead of failing them
+    @Bean
+    public ThreadPoolTaskExecutor couponEvaluationExecutor(
+            @Value("${coupon.batch.threads:0}") int threads,
+            @Value("${coupon.batch.queue-capacity:1000}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("coupon-eval-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    // Dedicated pool for splitting a single large evaluation across cores, kept apart
+    // from the common pool so parallel streams elsewhere cannot starve it
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool couponEvaluationForkJoinPool(@Value("${coupon.parallel.parallelism:0}") int parallelism) {
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ForkJoinPool(poolSize, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("coupon-fj-" + threadCount.incrementAndGet());
+            return thread;
+        }, null, false);
+    }
+}
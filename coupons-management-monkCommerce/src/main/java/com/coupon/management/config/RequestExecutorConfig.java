@@ -0,0 +1,45 @@
+package com.coupon.management.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+// Pools that run controller work off the Tomcat threads, see RequestDispatcher. Checkout
+// requests (cart evaluation) and admin requests (coupon reads and writes) get one each,
+// so a burst on one side cannot take the threads the other needs. Both reject when their
+// queue is full instead of running on the caller, since the caller is a Tomcat thread.
+@Configuration
+public class RequestExecutorConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor checkoutRequestExecutor(
+            @Value("${coupon.async.checkout.threads:0}") int threads,
+            @Value("${coupon.async.checkout.queue-capacity:500}") int queueCapacity) {
+        // CPU bound, so one thread per core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return requestExecutor("checkout", poolSize, queueCapacity);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor adminRequestExecutor(
+            @Value("${coupon.async.admin.threads:4}") int threads,
+            @Value("${coupon.async.admin.queue-capacity:200}") int queueCapacity) {
+        // Mostly waiting on the database; keep below the connection pool size so checkout
+        // requests that miss the lookup cache still get a connection
+        return requestExecutor("admin", threads, queueCapacity);
+    }
+
+    private static ThreadPoolTaskExecutor requestExecutor(String name, int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("coupon-" + name + "-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+}
@@ -1,118 +1,255 @@
 package com.coupon.management.controller;
 
 import com.coupon.management.dto.*;
-import com.coupon.management.entity.Cart;
 import com.coupon.management.entity.Coupon;
 import com.coupon.management.exception.CouponException;
+import com.coupon.management.execution.RequestDispatcher;
+import com.coupon.management.service.CouponImportService;
 import com.coupon.management.service.CouponService;
-import lombok.RequiredArgsConstructor;
+import com.coupon.management.usage.IdempotencyStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
-@RequiredArgsConstructor
 @Slf4j
 @CrossOrigin(origins = "*")
 public class CouponController {
 
     private final CouponService couponService;
+    private final CouponImportService couponImportService;
+    private final RequestDispatcher requestDispatcher;
+    private final ObjectWriter couponWriter;
+
+    public CouponController(CouponService couponService, CouponImportService couponImportService,
+                            RequestDispatcher requestDispatcher, ObjectMapper objectMapper) {
+        this.couponService = couponService;
+        this.couponImportService = couponImportService;
+        this.requestDispatcher = requestDispatcher;
+        this.couponWriter = objectMapper.writerFor(CouponResponse.class);
+    }
 
     @PostMapping("/createCoupon")
-    public ResponseEntity<CouponResponse> createCoupon(@Valid @RequestBody CouponRequest request) {
+    public CompletableFuture<ResponseEntity<CouponResponse>> createCoupon(@Valid @RequestBody CouponRequest request) {
         log.info("Creating coupon: {}", request.getCode());
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "createCoupon", () -> {
+            try {
+                Coupon coupon = couponService.createCoupon(request);
+                CouponResponse response = convertToCouponResponse(coupon);
+                return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            } catch (CouponException e) {
+                log.error("Error creating coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    // Body is newline-delimited JSON, one coupon per line; read as a stream, never buffered whole.
+    // Import, export and getAllCoupons run on the request thread and are not dispatched
+    @PostMapping(value = "/importCoupons", consumes = "application/x-ndjson")
+    public ResponseEntity<CouponImportResponse> importCoupons(InputStream body) {
+        log.info("Importing coupons");
         try {
-            Coupon coupon = couponService.createCoupon(request);
-            CouponResponse response = convertToCouponResponse(coupon);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            CouponImportResponse response = couponImportService.importCoupons(body);
+            return ResponseEntity.ok(response);
         } catch (CouponException e) {
-            log.error("Error creating coupon: {}", e.getMessage());
+            log.error("Error importing coupons: {}", e.getMessage());
             throw e;
         }
     }
 
+    // The unfiltered export: the same JSON array, never collected into a list
     @GetMapping("/getAllCoupons")
-    public ResponseEntity<List<CouponResponse>> getAllCoupons() {
+    public void getAllCoupons(HttpServletResponse response) throws IOException {
         log.info("Fetching all coupons");
-        List<Coupon> coupons = couponService.getAllCoupons();
-        List<CouponResponse> responses = new ArrayList<>();
-        for (Coupon coupon : coupons) {
-            CouponResponse response = convertToCouponResponse(coupon);
-            responses.add(response);
+        writeCoupons(new CouponFilter(), response);
+    }
+
+    @GetMapping("/getCoupons")
+    public CompletableFuture<ResponseEntity<CouponPageResponse>> getCoupons(CouponFilter filter,
+                                                                            @RequestParam(required = false) Long afterId,
+                                                                            @RequestParam(required = false) Integer limit) {
+        log.info("Fetching coupons after id {}", afterId);
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "getCoupons", () -> {
+            try {
+                CouponPageResponse response = couponService.getCouponPage(filter, afterId, limit);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error fetching coupons: {}", e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    // Coupons written to the response one at a time as they are read from the database
+    // instead of being collected into a list first
+    @GetMapping("/exportCoupons")
+    public void exportCoupons(CouponFilter filter, HttpServletResponse response) throws IOException {
+        log.info("Exporting coupons");
+        writeCoupons(filter, response);
+    }
+
+    private void writeCoupons(CouponFilter filter, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try (SequenceWriter writer = couponWriter.writeValuesAsArray(response.getOutputStream())) {
+            couponService.forEachCoupon(filter, coupon -> {
+                try {
+                    writer.write(coupon);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
         }
-        return ResponseEntity.ok(responses);
     }
 
     @GetMapping("/getCouponById/{id}")
-    public ResponseEntity<CouponResponse> getCouponById(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<CouponResponse>> getCouponById(@PathVariable Long id) {
         log.info("Fetching coupon with id: {}", id);
-        try {
-            Coupon coupon = couponService.getCouponById(id);
-            CouponResponse response = convertToCouponResponse(coupon);
-            return ResponseEntity.ok(response);
-        } catch (CouponException e) {
-            log.error("Error fetching coupon: {}", e.getMessage());
-            throw e;
-        }
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "getCouponById", () -> {
+            try {
+                Coupon coupon = couponService.getCouponById(id);
+                CouponResponse response = convertToCouponResponse(coupon);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error fetching coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    @GetMapping("/getCouponByCode/{code}")
+    public CompletableFuture<ResponseEntity<CouponResponse>> getCouponByCode(@PathVariable String code) {
+        log.info("Fetching coupon with code: {}", code);
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "getCouponByCode", () -> {
+            try {
+                Coupon coupon = couponService.getCouponByCode(code);
+                CouponResponse response = convertToCouponResponse(coupon);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error fetching coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
     }
 
     @PutMapping("/updateCouponById/{id}")
-    public ResponseEntity<CouponResponse> updateCoupon(@PathVariable Long id,
-                                                       @Valid @RequestBody CouponRequest request) {
+    public CompletableFuture<ResponseEntity<CouponResponse>> updateCoupon(@PathVariable Long id,
+                                                                          @Valid @RequestBody CouponRequest request) {
         log.info("Updating coupon with id: {}", id);
-        try {
-            Coupon coupon = couponService.updateCouponById(id, request);
-            CouponResponse response = convertToCouponResponse(coupon);
-            return ResponseEntity.ok(response);
-        } catch (CouponException e) {
-            log.error("Error updating coupon: {}", e.getMessage());
-            throw e;
-        }
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "updateCouponById", () -> {
+            try {
+                Coupon coupon = couponService.updateCouponById(id, request);
+                CouponResponse response = convertToCouponResponse(coupon);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error updating coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
     }
 
     //deleteCouponById
     @DeleteMapping("/deleteCouponById/{id}")
-    public ResponseEntity<Void> deleteCoupon(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<Void>> deleteCoupon(@PathVariable Long id) {
         log.info("Deleting coupon with id: {}", id);
-        try {
-            couponService.deleteCouponById(id);
-            return ResponseEntity.noContent().build();
-        } catch (CouponException e) {
-            log.error("Error deleting coupon: {}", e.getMessage());
-            throw e;
-        }
+        return requestDispatcher.submit(RequestDispatcher.Lane.ADMIN, "deleteCouponById", () -> {
+            try {
+                couponService.deleteCouponById(id);
+                return ResponseEntity.noContent().build();
+            } catch (CouponException e) {
+                log.error("Error deleting coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
     }
 
     @PostMapping("/applicable-coupons")
-    public ResponseEntity<ApplicableCouponsResponse> getApplicableCoupons(@Valid @RequestBody CartRequest cartRequest) {
+    public CompletableFuture<ResponseEntity<ApplicableCouponsResponse>> getApplicableCoupons(@Valid @RequestBody CartRequest cartRequest,
+                                                                                             @RequestParam(required = false) Integer limit,
+                                                                                             @RequestParam(required = false) Integer nearMisses) {
         log.info("Finding applicable coupons for cart");
-        try {
-            ApplicableCouponsResponse response = couponService.getApplicableCoupons(cartRequest);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error finding applicable coupons: {}", e.getMessage());
-            throw new CouponException("Error finding applicable coupons: " + e.getMessage());
-        }
+        return requestDispatcher.submit(RequestDispatcher.Lane.CHECKOUT, "applicable-coupons", () -> {
+            try {
+                ApplicableCouponsResponse response = couponService.getApplicableCoupons(cartRequest, limit, nearMisses);
+                return ResponseEntity.ok(response);
+            } catch (Exception e) {
+                log.error("Error finding applicable coupons: {}", e.getMessage());
+                throw new CouponException("Error finding applicable coupons: " + e.getMessage());
+            }
+        });
+    }
+
+    @PostMapping("/applicable-coupons/batch")
+    public CompletableFuture<ResponseEntity<ApplicableCouponsBatchResponse>> getApplicableCouponsBatch(@RequestBody List<CartRequest> cartRequests,
+                                                                                                       @RequestParam(required = false) Integer limit) {
+        log.info("Finding applicable coupons for {} carts", cartRequests.size());
+        return requestDispatcher.submit(RequestDispatcher.Lane.CHECKOUT, "applicable-coupons-batch", () -> {
+            try {
+                ApplicableCouponsBatchResponse response = couponService.getApplicableCouponsBatch(cartRequests, limit);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error finding applicable coupons for batch: {}", e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    @PostMapping("/best-combination")
+    public CompletableFuture<ResponseEntity<CouponCombinationResponse>> findBestCombination(@Valid @RequestBody CouponCombinationRequest request) {
+        log.info("Finding best coupon combination for cart");
+        return requestDispatcher.submit(RequestDispatcher.Lane.CHECKOUT, "best-combination", () -> {
+            try {
+                CouponCombinationResponse response = couponService.findBestCombination(request);
+                return ResponseEntity.ok(response);
+            } catch (CouponException e) {
+                log.error("Error finding best coupon combination: {}", e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    // Server-sent events, one per coupon write on any node; the event id is the change version
+    @GetMapping(value = "/coupon-changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCouponChanges(@RequestParam(required = false) Long afterVersion,
+                                          @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        log.info("Subscribing to coupon changes after version {}", afterVersion != null ? afterVersion : lastEventId);
+        return couponService.subscribeToChanges(afterVersion != null ? afterVersion : lastEventId);
     }
 
     @PostMapping("/apply-coupon/{id}")
-    public ResponseEntity<CartResponse> applyCoupon(@PathVariable Long id, @Valid @RequestBody CartRequest cartRequest) {
+    public CompletableFuture<ResponseEntity<CartResponse>> applyCoupon(@PathVariable Long id, @Valid @RequestBody CartRequest cartRequest,
+                                                                       @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("Applying coupon {} to cart", id);
-        try {
-            Cart cart = couponService.applyCoupon(id, cartRequest);
-            CartResponse response = CartResponse.fromCart(cart);
-            return ResponseEntity.ok(response);
-        } catch (CouponException e) {
-            log.error("Error applying coupon: {}", e.getMessage());
-            throw e;
-        }
+        return requestDispatcher.submit(RequestDispatcher.Lane.CHECKOUT, "apply-coupon", () -> {
+            try {
+                IdempotencyStore.Outcome<CartResponse> outcome = couponService.applyCoupon(id, cartRequest, idempotencyKey);
+                if (idempotencyKey == null) {
+                    return ResponseEntity.ok(outcome.getValue());
+                }
+                return ResponseEntity.ok()
+                        .header("Idempotent-Replayed", String.valueOf(outcome.isReplayed()))
+                        .body(outcome.getValue());
+            } catch (CouponException e) {
+                log.error("Error applying coupon: {}", e.getMessage());
+                throw e;
+            }
+        });
     }
 
     private CouponResponse convertToCouponResponse(Coupon coupon) {
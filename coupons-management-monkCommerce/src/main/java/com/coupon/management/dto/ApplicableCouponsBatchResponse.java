@@ -0,0 +1,26 @@
+package com.coupon.management.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApplicableCouponsBatchResponse {
+    // One entry per cart, in the order the carts were sent
+    private List<CartResult> results;
+    private int totalCarts;
+    private int failedCarts;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CartResult {
+        private int index;
+        private ApplicableCouponsResponse applicableCoupons;
+        private String error;
+    }
+}
@@ -1,9 +1,12 @@
 package com.coupon.management.dto;
 
+import com.coupon.management.engine.RejectionReason;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 @Data
@@ -12,4 +15,23 @@ import java.util.List;
 public class ApplicableCouponsResponse {
     private List<CouponResponse> applicableCoupons;
     private int totalApplicableCoupons;
-} 
\ No newline at end of file
+    // Only present when near misses were asked for, closest first
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<NearMiss> nearMisses;
+
+    public ApplicableCouponsResponse(List<CouponResponse> applicableCoupons, int totalApplicableCoupons) {
+        this(applicableCoupons, totalApplicableCoupons, null);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class NearMiss {
+        private Long couponId;
+        private String code;
+        private String name;
+        private RejectionReason reason;
+        private BigDecimal missingAmount;
+        private String message;
+    }
+}
\ No newline at end of file
@@ -32,6 +32,7 @@ public class CartRequest {
         private Integer quantity;
 
         @DecimalMin(value = "0.0", inclusive = false, message = "Price must be greater than 0")
+        @Digits(integer = 15, fraction = 2, message = "Price must have at most 2 decimal places")
         private BigDecimal price;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.coupon.management.dto;
+
+import com.coupon.management.entity.CouponChange;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponChangeResponse {
+    private Long version;
+    private Long couponId;
+    private CouponChange.ChangeType changeType;
+    private String nodeId;
+    private LocalDateTime changedAt;
+
+    public static CouponChangeResponse fromChange(CouponChange change) {
+        return new CouponChangeResponse(change.getId(), change.getCouponId(), change.getChangeType(),
+                change.getNodeId(), change.getChangedAt());
+    }
+}
@@ -0,0 +1,36 @@
+package com.coupon.management.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponCombinationRequest {
+
+    @Valid
+    @NotEmpty(message = "Cart items cannot be empty")
+    private List<CartRequest.CartItemRequest> items;
+
+    // Stacking rules
+    @Min(value = 1, message = "Maximum coupons must be at least 1")
+    private Integer maxCoupons;
+
+    // At most one coupon from each group can be combined
+    @Size(max = 64, message = "At most 64 exclusivity groups are supported")
+    private List<@NotNull(message = "Exclusivity groups cannot be null")
+            List<@NotNull(message = "Coupon IDs in exclusivity groups cannot be null") Long>> exclusiveGroups;
+
+    @Min(value = 1, message = "Time budget must be at least 1 ms")
+    @Max(value = 1000, message = "Time budget must be at most 1000 ms")
+    private Long timeBudgetMillis;
+}
@@ -0,0 +1,23 @@
+package com.coupon.management.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponCombinationResponse {
+    // In application order, calculatedDiscount is each coupon's share of the total
+    private List<CouponResponse> coupons;
+    private BigDecimal totalPrice;
+    private BigDecimal totalDiscount;
+    private BigDecimal finalPrice;
+    // False when the time budget ran out before the search proved the result optimal.
+    // Cart-wise coupons are applied in the order of their standalone discounts, highest
+    // first, and other orders are not tried, so optimal means optimal for that order
+    private boolean optimal;
+}
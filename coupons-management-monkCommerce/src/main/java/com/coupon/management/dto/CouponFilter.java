@@ -0,0 +1,21 @@
+package com.coupon.management.dto;
+
+import com.coupon.management.entity.Coupon;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+// Optional filters for the paged and streamed coupon listings; unset fields match everything
+@Data
+public class CouponFilter {
+    private Coupon.CouponType type;
+    private Boolean active;
+
+    // Window the coupon's validity period must overlap; open-ended on a missing side
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime validFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime validUntil;
+}
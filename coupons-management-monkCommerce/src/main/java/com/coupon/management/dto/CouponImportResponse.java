@@ -0,0 +1,29 @@
+package com.coupon.management.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponImportResponse {
+    // Non-blank lines read from the body
+    private long totalLines;
+    private long importedCoupons;
+    private long failedLines;
+    // At most coupon.import.max-reported-errors failures, sorted by line
+    private List<LineError> errors;
+    private boolean errorsTruncated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LineError {
+        private long line;
+        private String code;
+        private String error;
+    }
+}
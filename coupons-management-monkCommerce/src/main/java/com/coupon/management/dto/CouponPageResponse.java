@@ -0,0 +1,18 @@
+package com.coupon.management.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponPageResponse {
+    // In id order
+    private List<CouponResponse> coupons;
+    // Pass as afterId to fetch the next page; null on the last page
+    private Long nextCursor;
+    private boolean hasMore;
+}
@@ -27,6 +27,7 @@ public class CouponRequest {
     @NotNull(message = "Coupon type is required")
     private Coupon.CouponType type;
 
+    @NotNull(message = "Discount value is required")
     @DecimalMin(value = "0.0", inclusive = true, message = "Discount value must be non-negative+")
     private BigDecimal discountValue;
 
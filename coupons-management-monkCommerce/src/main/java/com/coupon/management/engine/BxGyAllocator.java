@@ -0,0 +1,242 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.entity.BxGyRule;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// BXGY evaluation on concrete cart units. Rules run in the given order and at most
+// repetitionLimit of them may give something away. A rule counts the buy units still
+// in the pool, gives away the cheapest get units first and then takes the units it was
+// bought with out of the pool, so no unit is counted twice across rules. A rule finds
+// its lines through the cart's binary search when it names fewer products than the
+// cart has lines, and through a single scan otherwise.
+public final class BxGyAllocator {
+
+    private static final int[] NO_LINES = new int[0];
+
+    private final Rule[] rules;
+    private final int repetitionLimit;
+
+    public BxGyAllocator(List<BxGyRule> rules, int repetitionLimit) {
+        this.rules = new Rule[rules.size()];
+        for (int i = 0; i < this.rules.length; i++) {
+            this.rules[i] = new Rule(rules.get(i));
+        }
+        this.repetitionLimit = repetitionLimit;
+    }
+
+    // Free units and their value per line; BXGY coupons have no cap
+    public DiscountPlan allocate(CartView cart) {
+        Pool pool = run(cart);
+        if (pool.free == null) {
+            return DiscountPlan.NONE;
+        }
+
+        long[] lineDiscounts = new long[cart.size()];
+        long discount = 0L;
+        for (int line = 0; line < cart.size(); line++) {
+            if (pool.free[line] > 0) {
+                lineDiscounts[line] = freeValue(cart, line, pool.free[line]);
+                discount += lineDiscounts[line];
+            }
+        }
+        return DiscountPlan.perLine(lineDiscounts, pool.free, discount, discount, pool.applied);
+    }
+
+    // allocate(cart).total() without building the plan
+    public long discount(CartView cart) {
+        Pool pool = run(cart);
+        if (pool.free == null) {
+            return 0L;
+        }
+        long discount = 0L;
+        for (int line = 0; line < cart.size(); line++) {
+            if (pool.free[line] > 0) {
+                discount += freeValue(cart, line, pool.free[line]);
+            }
+        }
+        return discount;
+    }
+
+    private Pool run(CartView cart) {
+        Pool pool = new Pool(cart);
+        for (Rule rule : rules) {
+            if (pool.applied >= repetitionLimit) {
+                break;
+            }
+            if (rule.allocate(cart, pool)) {
+                pool.applied++;
+            }
+        }
+        return pool;
+    }
+
+    // Free units are worth the line's average unit price
+    private static long freeValue(CartView cart, int line, int units) {
+        return Money.divideHalfUp(Money.times(cart.lineTotal(line), units), cart.quantity(line));
+    }
+
+    // Units per line that earlier rules already gave away or bought with; the arrays are
+    // only created once a rule applies, most evaluations never get that far
+    private static final class Pool {
+        private final CartView cart;
+        private int[] taken;
+        private int[] free;
+        private int applied;
+
+        Pool(CartView cart) {
+            this.cart = cart;
+        }
+
+        int available(int line) {
+            return taken == null ? cart.quantity(line) : cart.quantity(line) - taken[line];
+        }
+
+        void take(int line, int units) {
+            if (taken == null) {
+                taken = new int[cart.size()];
+                free = new int[cart.size()];
+            }
+            taken[line] += units;
+        }
+
+        void give(int line, int units) {
+            take(line, units);
+            free[line] += units;
+        }
+    }
+
+    private static final class Rule {
+
+        private final int buyQuantity;
+        private final int getQuantity;
+        private final LongHashSet buyProductIds;
+        private final LongHashSet getProductIds;
+        private final long[] buyIds;
+        private final long[] getIds;
+
+        Rule(BxGyRule rule) {
+            this.buyQuantity = rule.getBuyQuantity();
+            this.getQuantity = rule.getGetQuantity();
+            this.buyProductIds = LongHashSet.of(rule.getBuyProductIds());
+            this.getProductIds = LongHashSet.of(rule.getGetProductIds());
+            this.buyIds = distinct(rule.getBuyProductIds());
+            this.getIds = distinct(rule.getGetProductIds());
+        }
+
+        // True when the rule gave at least one unit away
+        boolean allocate(CartView cart, Pool pool) {
+            int[] buyLines = lines(cart, buyProductIds, buyIds);
+            long buyUnits = 0L;
+            for (int line : buyLines) {
+                buyUnits += pool.available(line);
+            }
+            long times = buyUnits / buyQuantity;
+            if (times == 0) {
+                return false;
+            }
+
+            int[] getLines = cheapestFirst(cart, lines(cart, getProductIds, getIds));
+            // Free units that are also buy products leave fewer units to buy with, so fewer
+            // repetitions are tried until the rest still pays for them
+            long freeUnits;
+            while (true) {
+                long target = times * getQuantity;
+                long sharedUnits = 0L;
+                freeUnits = 0L;
+                for (int line : getLines) {
+                    if (freeUnits == target) {
+                        break;
+                    }
+                    long units = Math.min(pool.available(line), target - freeUnits);
+                    freeUnits += units;
+                    if (buyProductIds.contains(cart.productId(line))) {
+                        sharedUnits += units;
+                    }
+                }
+                if (times * buyQuantity <= buyUnits - sharedUnits) {
+                    break;
+                }
+                times = Math.min(times - 1, (buyUnits - sharedUnits) / buyQuantity);
+                if (times <= 0) {
+                    return false;
+                }
+            }
+            if (freeUnits == 0) {
+                return false;
+            }
+            // A cart short of get units only pays for the repetitions it can be given
+            times = Math.min(times, (freeUnits + getQuantity - 1) / getQuantity);
+
+            long toGive = freeUnits;
+            for (int line : getLines) {
+                if (toGive == 0) {
+                    break;
+                }
+                int units = (int) Math.min(pool.available(line), toGive);
+                pool.give(line, units);
+                toGive -= units;
+            }
+            // Paid for with buy-only units first, keeping shared units available as freebies
+            long toBuy = times * buyQuantity;
+            toBuy = takeBuyUnits(cart, pool, buyLines, toBuy, false);
+            takeBuyUnits(cart, pool, buyLines, toBuy, true);
+            return true;
+        }
+
+        private long takeBuyUnits(CartView cart, Pool pool, int[] buyLines, long toBuy, boolean shared) {
+            for (int line : buyLines) {
+                if (toBuy == 0) {
+                    break;
+                }
+                if (getProductIds.contains(cart.productId(line)) != shared) {
+                    continue;
+                }
+                int units = (int) Math.min(pool.available(line), toBuy);
+                pool.take(line, units);
+                toBuy -= units;
+            }
+            return toBuy;
+        }
+
+        private static int[] lines(CartView cart, LongHashSet productIds, long[] ids) {
+            int[] lines = new int[Math.min(ids.length, cart.size())];
+            int count = 0;
+            if (ids.length < cart.size()) {
+                for (long id : ids) {
+                    int line = cart.indexOf(id);
+                    if (line >= 0) {
+                        lines[count++] = line;
+                    }
+                }
+            } else {
+                for (int line = 0; line < cart.size(); line++) {
+                    if (productIds.contains(cart.productId(line))) {
+                        lines[count++] = line;
+                    }
+                }
+            }
+            return count == 0 ? NO_LINES : Arrays.copyOf(lines, count);
+        }
+
+        // Sorted on the cart's price ranks packed above the line index, so no boxing
+        private static int[] cheapestFirst(CartView cart, int[] lines) {
+            long[] keys = new long[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                keys[i] = ((long) cart.priceRank(lines[i]) << 32) | lines[i];
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < keys.length; i++) {
+                lines[i] = (int) keys[i];
+            }
+            return lines;
+        }
+
+        private static long[] distinct(Collection<Long> ids) {
+            return new LinkedHashSet<>(ids).stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.dto.CartRequest;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Immutable per-request aggregation of a cart, built in one pass and shared by
+// every coupon evaluated against it. Lines are merged by product id and sorted.
+public final class CartView {
+
+    private final long[] productIds;
+    private final int[] quantities;
+    private final long[] lineTotals;
+    private final long total;
+    private final long totalQuantity;
+    // Position of each line when ordered by unit price, cheapest first; only BXGY needs
+    // it, so it is sorted on first use. Racing threads compute the same array
+    private volatile int[] priceRanks;
+
+    private CartView(long[] productIds, int[] quantities, long[] lineTotals, long total) {
+        this.productIds = productIds;
+        this.quantities = quantities;
+        this.lineTotals = lineTotals;
+        this.total = total;
+        long totalQuantity = 0;
+        for (int quantity : quantities) {
+            totalQuantity += quantity;
+        }
+        this.totalQuantity = totalQuantity;
+    }
+
+    public static CartView of(CartRequest cartRequest) {
+        List<CartRequest.CartItemRequest> items = cartRequest.getItems();
+        CartRequest.CartItemRequest[] sorted = items.toArray(new CartRequest.CartItemRequest[0]);
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.getProductId(), b.getProductId()));
+
+        long[] productIds = new long[sorted.length];
+        int[] quantities = new int[sorted.length];
+        long[] lineTotals = new long[sorted.length];
+        long total = 0;
+        int lines = 0;
+        for (CartRequest.CartItemRequest item : sorted) {
+            long lineTotal = Money.times(Money.toCents(item.getPrice()), item.getQuantity());
+            total = Math.addExact(total, lineTotal);
+            if (lines > 0 && productIds[lines - 1] == item.getProductId()) {
+                quantities[lines - 1] += item.getQuantity();
+                lineTotals[lines - 1] += lineTotal;
+                continue;
+            }
+            productIds[lines] = item.getProductId();
+            quantities[lines] = item.getQuantity();
+            lineTotals[lines] = lineTotal;
+            lines++;
+        }
+        return new CartView(Arrays.copyOf(productIds, lines), Arrays.copyOf(quantities, lines),
+                Arrays.copyOf(lineTotals, lines), total);
+    }
+
+    public int size() {
+        return productIds.length;
+    }
+
+    public long productId(int line) {
+        return productIds[line];
+    }
+
+    public int quantity(int line) {
+        return quantities[line];
+    }
+
+    // Amounts are in cents, see Money
+    public long lineTotal(int line) {
+        return lineTotals[line];
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public long totalQuantity() {
+        return totalQuantity;
+    }
+
+    public int priceRank(int line) {
+        int[] ranks = priceRanks;
+        if (ranks == null) {
+            ranks = rankByUnitPrice();
+            priceRanks = ranks;
+        }
+        return ranks[line];
+    }
+
+    // Line index for a product, or a negative value when the cart does not hold it
+    public int indexOf(long productId) {
+        return Arrays.binarySearch(productIds, productId);
+    }
+
+    public long[] productIds() {
+        return productIds.clone();
+    }
+
+    // Unit prices are sorted as primitive keys; a line's rank is the number of cheaper
+    // lines plus the lines of the same unit price before it, so ties keep product id order
+    private int[] rankByUnitPrice() {
+        long[] keys = new long[productIds.length];
+        for (int line = 0; line < keys.length; line++) {
+            keys[line] = unitPriceKey(line);
+        }
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int[] ties = new int[keys.length];
+        int[] ranks = new int[keys.length];
+        for (int line = 0; line < keys.length; line++) {
+            int cheaper = firstIndexOf(sorted, keys[line]);
+            ranks[line] = cheaper + ties[cheaper]++;
+        }
+        return ranks;
+    }
+
+    // The unit price's bits, flipped for negative values so the keys order like the prices
+    private long unitPriceKey(int line) {
+        long bits = Double.doubleToLongBits((double) lineTotals[line] / quantities[line]);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static int firstIndexOf(long[] sorted, long key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
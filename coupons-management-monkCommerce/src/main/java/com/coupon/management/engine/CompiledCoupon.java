@@ -0,0 +1,306 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// A coupon compiled once into an immutable evaluator; the coupon type is resolved
+// by picking the subclass, product lists become primitive hash sets and every
+// amount is held in cents (see Money)
+@Getter
+public abstract class CompiledCoupon {
+
+    protected static final long NO_CAP = Long.MAX_VALUE;
+
+    private final Coupon coupon;
+    private final Coupon.CouponType type;
+    private final boolean active;
+    private final LocalDateTime validFrom;
+    private final LocalDateTime validUntil;
+    private final int maxUsage;
+    private final int currentUsage;
+    private final long minimumCartValue;
+    private final long maxDiscountAmount;
+
+    protected CompiledCoupon(Coupon coupon) {
+        this.coupon = coupon;
+        this.type = coupon.getType();
+        this.active = coupon.isActive();
+        this.validFrom = coupon.getValidFrom();
+        this.validUntil = coupon.getValidUntil();
+        this.maxUsage = coupon.getMaxUsage() != null ? coupon.getMaxUsage() : Integer.MAX_VALUE;
+        this.currentUsage = coupon.getCurrentUsage() != null ? coupon.getCurrentUsage() : 0;
+        this.minimumCartValue = coupon.getMinimumCartValue() != null
+                ? Money.toCentsRounded(coupon.getMinimumCartValue()) : 0L;
+        this.maxDiscountAmount = coupon.getMaxDiscountAmount() != null
+                ? Money.toCentsRounded(coupon.getMaxDiscountAmount()) : NO_CAP;
+    }
+
+    public static CompiledCoupon compile(Coupon coupon) {
+        switch (coupon.getType()) {
+            case CART_WISE:
+                return new CartWise(coupon);
+            case PRODUCT_WISE:
+                return new ProductWise(coupon);
+            case BXGY:
+                return new BxGy(coupon);
+            default:
+                throw new IllegalArgumentException("Unsupported coupon type: " + coupon.getType());
+        }
+    }
+
+    public Long getId() {
+        return coupon.getId();
+    }
+
+    public String getCode() {
+        return coupon.getCode();
+    }
+
+    // Everything that rules the coupon out before a discount is computed, packed by
+    // Eligibility. Time changes after compilation, so this is checked on every read
+    public long eligibility(CartView cart, LocalDateTime time) {
+        if (!active) {
+            return Eligibility.rejected(RejectionReason.NOT_ACTIVE);
+        }
+        if (validFrom != null && validFrom.isAfter(time)) {
+            return Eligibility.rejected(RejectionReason.NOT_YET_VALID);
+        }
+        if (validUntil != null && validUntil.isBefore(time)) {
+            return Eligibility.rejected(RejectionReason.EXPIRED);
+        }
+        if (currentUsage >= maxUsage) {
+            return Eligibility.rejected(RejectionReason.USAGE_EXHAUSTED);
+        }
+        if (cart.total() < minimumCartValue) {
+            return Eligibility.rejected(RejectionReason.BELOW_MINIMUM, minimumCartValue - cart.total());
+        }
+        return Eligibility.ELIGIBLE;
+    }
+
+    // Product ids that must be in a cart for this coupon to give any discount;
+    // empty for coupons that apply to every cart
+    public abstract List<Long> triggerProductIds();
+
+    // The one evaluation of this coupon against the cart; validation, the applied cart and
+    // the stacking solver are derived from it
+    public abstract DiscountPlan plan(CartView cart);
+
+    // Discount in cents for the cart, zero when the coupon does not apply; always equal to
+    // plan(cart).total(), but without building the plan, for ranking many candidates
+    public abstract long discount(CartView cart);
+
+    // Order-level (CART_WISE) coupons only look at the subtotal, so they can be
+    // re-evaluated after other coupons have reduced it
+    public boolean isOrderLevel() {
+        return false;
+    }
+
+    // Discount on a subtotal alone; zero for coupons that need the cart's lines
+    public abstract long discountOnSubtotal(long subtotal);
+
+    // Cheap ceiling on discount(cart), used to skip coupons that cannot make a top-K cut
+    public abstract long upperBound(CartView cart);
+
+    // True when upperBound(cart) already is discount(cart), so it need not be evaluated again
+    public boolean isUpperBoundExact() {
+        return false;
+    }
+
+    protected long applyCap(long discount) {
+        return Math.max(0L, Math.min(discount, maxDiscountAmount));
+    }
+
+    private static final class CartWise extends CompiledCoupon {
+
+        private final boolean percentage;
+        private final long discountValue;
+
+        CartWise(Coupon coupon) {
+            super(coupon);
+            this.percentage = coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE;
+            this.discountValue = Money.toCentsRounded(coupon.getDiscountValue());
+        }
+
+        @Override
+        public List<Long> triggerProductIds() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public DiscountPlan plan(CartView cart) {
+            if (cart.total() < getMinimumCartValue()) {
+                return DiscountPlan.NONE;
+            }
+            long uncapped = uncappedDiscount(cart.total());
+            return DiscountPlan.orderLevel(applyCap(uncapped), uncapped);
+        }
+
+        @Override
+        public long discount(CartView cart) {
+            return discountOnSubtotal(cart.total());
+        }
+
+        @Override
+        public boolean isOrderLevel() {
+            return true;
+        }
+
+        @Override
+        public long discountOnSubtotal(long subtotal) {
+            if (subtotal < getMinimumCartValue()) {
+                return 0L;
+            }
+            return applyCap(uncappedDiscount(subtotal));
+        }
+
+        private long uncappedDiscount(long subtotal) {
+            return percentage ? Money.percentage(subtotal, discountValue) : discountValue;
+        }
+
+        @Override
+        public long upperBound(CartView cart) {
+            return discount(cart);
+        }
+
+        @Override
+        public boolean isUpperBoundExact() {
+            return true;
+        }
+    }
+
+    private static final class ProductWise extends CompiledCoupon {
+
+        private final boolean percentage;
+        private final long discountValue;
+        private final LongHashSet productIds;
+        private final List<Long> triggerProductIds;
+
+        ProductWise(Coupon coupon) {
+            super(coupon);
+            this.percentage = coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE;
+            this.discountValue = Money.toCentsRounded(coupon.getDiscountValue());
+            List<Long> ids = coupon.getApplicableProductIds() != null
+                    ? coupon.getApplicableProductIds() : Collections.<Long>emptyList();
+            this.productIds = LongHashSet.of(ids);
+            this.triggerProductIds = Collections.unmodifiableList(new ArrayList<>(ids));
+        }
+
+        @Override
+        public List<Long> triggerProductIds() {
+            return triggerProductIds;
+        }
+
+        @Override
+        public DiscountPlan plan(CartView cart) {
+            if (productIds.isEmpty()) {
+                return DiscountPlan.NONE;
+            }
+            long[] lineDiscounts = null;
+            long totalDiscount = 0L;
+            int matchedLines = 0;
+            for (int line = 0; line < cart.size(); line++) {
+                if (productIds.contains(cart.productId(line))) {
+                    if (lineDiscounts == null) {
+                        lineDiscounts = new long[cart.size()];
+                    }
+                    lineDiscounts[line] = lineDiscount(cart, line);
+                    totalDiscount += lineDiscounts[line];
+                    matchedLines++;
+                }
+            }
+            if (lineDiscounts == null) {
+                return DiscountPlan.NONE;
+            }
+            return DiscountPlan.perLine(lineDiscounts, null, totalDiscount, applyCap(totalDiscount), matchedLines);
+        }
+
+        @Override
+        public long discount(CartView cart) {
+            long totalDiscount = 0L;
+            if (!productIds.isEmpty()) {
+                for (int line = 0; line < cart.size(); line++) {
+                    if (productIds.contains(cart.productId(line))) {
+                        totalDiscount += lineDiscount(cart, line);
+                    }
+                }
+            }
+            return applyCap(totalDiscount);
+        }
+
+        @Override
+        public long discountOnSubtotal(long subtotal) {
+            return 0L;
+        }
+
+        private long lineDiscount(CartView cart, int line) {
+            return percentage
+                    ? Money.percentage(cart.lineTotal(line), discountValue)
+                    : Money.times(discountValue, cart.quantity(line));
+        }
+
+        @Override
+        public long upperBound(CartView cart) {
+            if (productIds.isEmpty()) {
+                return 0L;
+            }
+            // Per-line HALF_UP rounding can add up to half a cent per line over the whole-cart figure
+            long bound = percentage
+                    ? Money.percentage(cart.total(), discountValue) + cart.size()
+                    : Money.times(discountValue, cart.totalQuantity());
+            return applyCap(bound);
+        }
+    }
+
+    private static final class BxGy extends CompiledCoupon {
+
+        private final BxGyAllocator allocator;
+        private final List<Long> triggerProductIds;
+
+        BxGy(Coupon coupon) {
+            super(coupon);
+            List<BxGyRule> sorted = coupon.getBxgyRules() != null
+                    ? new ArrayList<>(coupon.getBxgyRules()) : new ArrayList<BxGyRule>();
+            sorted.sort(Comparator.comparing(BxGyRule::getPriority));
+            List<Long> buyIds = new ArrayList<>();
+            for (BxGyRule rule : sorted) {
+                buyIds.addAll(rule.getBuyProductIds());
+            }
+            this.allocator = new BxGyAllocator(sorted,
+                    coupon.getRepetitionLimit() != null ? coupon.getRepetitionLimit() : 1);
+            this.triggerProductIds = Collections.unmodifiableList(buyIds);
+        }
+
+        @Override
+        public List<Long> triggerProductIds() {
+            return triggerProductIds;
+        }
+
+        @Override
+        public DiscountPlan plan(CartView cart) {
+            return allocator.allocate(cart);
+        }
+
+        @Override
+        public long discount(CartView cart) {
+            return allocator.discount(cart);
+        }
+
+        @Override
+        public long discountOnSubtotal(long subtotal) {
+            return 0L;
+        }
+
+        @Override
+        public long upperBound(CartView cart) {
+            // Only units in the cart are given away
+            return cart.total();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.coupon.management.engine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Everything one coupon does to one cart, from a single evaluation: the discount and
+// free units per CartView line, the total after the cap, and how many rules hit (matched
+// lines for PRODUCT_WISE, applied rules for BXGY, 1 for an applied CART_WISE coupon).
+// Order-level discounts are not spread over lines, so their line amounts are all zero.
+// Immutable; the arrays are never handed out.
+public final class DiscountPlan {
+
+    public static final DiscountPlan NONE = new DiscountPlan(null, null, 0L, 0L, 0);
+
+    private final long[] lineDiscounts;
+    private final int[] freeQuantities;
+    private final long total;
+    private final long uncappedTotal;
+    private final int ruleHits;
+
+    private DiscountPlan(long[] lineDiscounts, int[] freeQuantities, long total, long uncappedTotal, int ruleHits) {
+        this.lineDiscounts = lineDiscounts;
+        this.freeQuantities = freeQuantities;
+        this.total = total;
+        this.uncappedTotal = uncappedTotal;
+        this.ruleHits = ruleHits;
+    }
+
+    static DiscountPlan orderLevel(long total, long uncappedTotal) {
+        return total > 0 ? new DiscountPlan(null, null, total, uncappedTotal, 1) : NONE;
+    }
+
+    // Line amounts add up to uncappedTotal; a cap is spread over them in proportion
+    static DiscountPlan perLine(long[] lineDiscounts, int[] freeQuantities, long uncappedTotal, long cappedTotal,
+                                int ruleHits) {
+        if (cappedTotal <= 0) {
+            return NONE;
+        }
+        if (cappedTotal < uncappedTotal) {
+            lineDiscounts = scale(lineDiscounts, uncappedTotal, cappedTotal);
+        }
+        return new DiscountPlan(lineDiscounts, freeQuantities, cappedTotal, uncappedTotal, ruleHits);
+    }
+
+    public long lineDiscount(int line) {
+        return lineDiscounts != null ? lineDiscounts[line] : 0L;
+    }
+
+    public int freeQuantity(int line) {
+        return freeQuantities != null ? freeQuantities[line] : 0;
+    }
+
+    // Discount in cents, zero when the coupon does not apply
+    public long total() {
+        return total;
+    }
+
+    public long uncappedTotal() {
+        return uncappedTotal;
+    }
+
+    public boolean isCapped() {
+        return total < uncappedTotal;
+    }
+
+    public int ruleHits() {
+        return ruleHits;
+    }
+
+    public boolean isApplicable() {
+        return total > 0;
+    }
+
+    // Each line gets its floored share of target; the cents lost to flooring go one each
+    // to the first lines with a discount
+    private static long[] scale(long[] lines, long from, long target) {
+        long[] scaled = new long[lines.length];
+        long assigned = 0L;
+        for (int line = 0; line < lines.length; line++) {
+            scaled[line] = share(lines[line], target, from);
+            assigned += scaled[line];
+        }
+        for (int line = 0; line < lines.length && assigned < target; line++) {
+            if (lines[line] > 0) {
+                scaled[line]++;
+                assigned++;
+            }
+        }
+        return scaled;
+    }
+
+    // amount * numerator / denominator, rounded down
+    private static long share(long amount, long numerator, long denominator) {
+        try {
+            return Math.multiplyExact(amount, numerator) / denominator;
+        } catch (ArithmeticException overflow) {
+            return BigDecimal.valueOf(amount).multiply(BigDecimal.valueOf(numerator))
+                    .divide(BigDecimal.valueOf(denominator), 0, RoundingMode.DOWN)
+                    .longValueExact();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.coupon.management.engine;
+
+// Outcome of CompiledCoupon.eligibility packed into a long, so the check on the hot path
+// allocates nothing: zero when the coupon may apply, otherwise the reason in the low
+// bits and the missing amount in cents (BELOW_MINIMUM only) above them
+public final class Eligibility {
+
+    public static final long ELIGIBLE = 0L;
+
+    private static final int REASON_BITS = 3;
+    private static final long REASON_MASK = (1L << REASON_BITS) - 1;
+    private static final RejectionReason[] REASONS = RejectionReason.values();
+
+    private Eligibility() {
+    }
+
+    static long rejected(RejectionReason reason) {
+        return rejected(reason, 0L);
+    }
+
+    static long rejected(RejectionReason reason, long missingCents) {
+        return (missingCents << REASON_BITS) | (reason.ordinal() + 1);
+    }
+
+    public static boolean isEligible(long eligibility) {
+        return eligibility == ELIGIBLE;
+    }
+
+    // Null when eligible
+    public static RejectionReason reason(long eligibility) {
+        return eligibility == ELIGIBLE ? null : REASONS[(int) (eligibility & REASON_MASK) - 1];
+    }
+
+    public static long missingAmount(long eligibility) {
+        return eligibility >>> REASON_BITS;
+    }
+}
@@ -0,0 +1,76 @@
+package com.coupon.management.engine;
+
+import java.util.Collection;
+
+// Immutable open-addressing set of primitive longs; lookups never box or allocate
+public final class LongHashSet {
+
+    private static final long EMPTY_SLOT = 0L;
+
+    private final long[] slots;
+    private final int mask;
+    private final boolean containsZero;
+    private final int size;
+
+    private LongHashSet(long[] slots, boolean containsZero, int size) {
+        this.slots = slots;
+        this.mask = slots.length - 1;
+        this.containsZero = containsZero;
+        this.size = size;
+    }
+
+    public static LongHashSet of(Collection<Long> values) {
+        int capacity = Integer.highestOneBit(Math.max(4, values.size() * 2 - 1)) << 1;
+        long[] slots = new long[capacity];
+        int mask = capacity - 1;
+        boolean containsZero = false;
+        int size = 0;
+        for (Long boxed : values) {
+            long value = boxed;
+            if (value == EMPTY_SLOT) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+                continue;
+            }
+            int slot = mix(value) & mask;
+            while (slots[slot] != EMPTY_SLOT && slots[slot] != value) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] == EMPTY_SLOT) {
+                slots[slot] = value;
+                size++;
+            }
+        }
+        return new LongHashSet(slots, containsZero, size);
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY_SLOT) {
+            return containsZero;
+        }
+        int slot = mix(value) & mask;
+        long current;
+        while ((current = slots[slot]) != EMPTY_SLOT) {
+            if (current == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
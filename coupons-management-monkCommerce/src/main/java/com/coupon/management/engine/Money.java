@@ -0,0 +1,58 @@
+package com.coupon.management.engine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point money in long cents for the evaluation path. Amounts are converted
+// from BigDecimal when a cart or coupon enters the engine and back only at the
+// JSON boundary; rounding matches divide(..., 2, RoundingMode.HALF_UP).
+public final class Money {
+
+    public static final int SCALE = 2;
+
+    private static final long BASIS_POINTS_PER_UNIT = 10_000L;
+
+    private Money() {
+    }
+
+    // Exact conversion; amounts with fractions of a cent are rejected
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    // Coupon settings are stored with two decimals, so they are rounded the way the column does
+    public static long toCentsRounded(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    public static long times(long cents, long quantity) {
+        return Math.multiplyExact(cents, quantity);
+    }
+
+    // amount * rate / 100 where the rate is in hundredths of a percent (12.50% == 1250)
+    public static long percentage(long amountCents, long rateBasisPoints) {
+        long product;
+        try {
+            product = Math.multiplyExact(amountCents, rateBasisPoints);
+        } catch (ArithmeticException overflow) {
+            return BigDecimal.valueOf(amountCents).multiply(BigDecimal.valueOf(rateBasisPoints))
+                    .divide(BigDecimal.valueOf(BASIS_POINTS_PER_UNIT), 0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        }
+        return divideHalfUp(product, BASIS_POINTS_PER_UNIT);
+    }
+
+    // Integer division rounding half away from zero, without overflowing on the remainder
+    public static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder >= Math.abs(divisor) - remainder) {
+            quotient += ((dividend < 0) == (divisor < 0)) ? 1 : -1;
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,66 @@
+package com.coupon.management.engine;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// The `limit` coupons a cart came closest to unlocking: those only held back by their
+// minimum cart value, smallest shortfall first and ties in catalog order. Fed from the
+// eligibility checks the evaluation makes anyway; only item-level coupons are evaluated,
+// since reaching the minimum does not help one whose products are not in the cart.
+// Shared by every slice of a parallel evaluation; positions make the outcome the same
+// whichever slice offers first.
+public final class NearMissCollector {
+
+    private static final Comparator<NearMiss> CLOSEST_FIRST = Comparator
+            .comparingLong(NearMiss::getMissingAmount)
+            .thenComparingInt(NearMiss::getPosition);
+
+    private final int limit;
+    private final PriorityQueue<NearMiss> heap;
+
+    public NearMissCollector(int limit) {
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(Math.min(limit, 64), CLOSEST_FIRST.reversed());
+    }
+
+    // position is the coupon's place among the evaluated candidates
+    public void offer(CompiledCoupon coupon, CartView cart, long missingAmount, int position) {
+        if (!coupon.isOrderLevel() && coupon.discount(cart) == 0L) {
+            return;
+        }
+        add(new NearMiss(coupon, missingAmount, position));
+    }
+
+    private synchronized void add(NearMiss nearMiss) {
+        if (heap.size() < limit) {
+            heap.add(nearMiss);
+        } else if (CLOSEST_FIRST.compare(nearMiss, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(nearMiss);
+        }
+    }
+
+    public synchronized List<NearMiss> results() {
+        List<NearMiss> results = new ArrayList<>(heap);
+        results.sort(CLOSEST_FIRST);
+        return results;
+    }
+
+    @Getter
+    public static final class NearMiss {
+        private final CompiledCoupon coupon;
+        // Cents still to add to the cart
+        private final long missingAmount;
+        private final int position;
+
+        private NearMiss(CompiledCoupon coupon, long missingAmount, int position) {
+            this.coupon = coupon;
+            this.missingAmount = missingAmount;
+            this.position = position;
+        }
+    }
+}
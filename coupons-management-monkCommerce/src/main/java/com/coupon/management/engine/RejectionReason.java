@@ -0,0 +1,11 @@
+package com.coupon.management.engine;
+
+// Why a coupon gives nothing on a cart, in the order the checks run
+public enum RejectionReason {
+    NOT_ACTIVE,
+    NOT_YET_VALID,
+    EXPIRED,
+    USAGE_EXHAUSTED,
+    BELOW_MINIMUM,
+    NO_MATCHING_PRODUCTS
+}
@@ -0,0 +1,297 @@
+package com.coupon.management.engine;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Branch-and-bound search for the coupon combination with the largest total discount.
+// Item-level coupons (PRODUCT_WISE, BXGY) are applied first against the original
+// prices; their per-line discounts add up, but no line is discounted below zero.
+// Order-level coupons (CART_WISE) are then applied one after another to the remaining
+// subtotal, in candidate order; other orders are not searched. Because a line cap only ever takes away and an order-level discount never
+// grows when its subtotal shrinks, a coupon's standalone discount bounds what it can
+// add to any combination, which is what the search prunes on.
+public final class StackingSolver {
+
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+    private static final int[] NO_LINES = new int[0];
+    private static final long[] NO_AMOUNTS = new long[0];
+
+    private final CompiledCoupon[] coupons;
+    private final long[] standalone;
+    private final long[] groupMasks;
+    private final long[] prefixSums;
+    // Each item-level coupon's plan as the lines it discounts and by how much
+    private final int[][] discountedLines;
+    private final long[][] lineDiscounts;
+    private final long[] lineTotals;
+    private final long cartTotal;
+    private final int maxCoupons;
+    private final long deadlineNanos;
+
+    private final int[] chosen;
+    private final long[] gains;
+    private final long[] groupBest = new long[Long.SIZE];
+    // Item-level discounts of the current combination per line, before the line cap,
+    // and their sum after it
+    private final long[] lineSums;
+    private long itemLevel;
+    private int[] best = new int[0];
+    private long bestValue;
+    private long nodes;
+    private boolean timedOut;
+
+    // Candidates must already be sorted by standalone discount, highest first
+    public StackingSolver(List<Candidate> candidates, CartView cart, int maxCoupons,
+                          Map<Long, Long> groupMasksByCouponId, long timeBudgetNanos) {
+        int n = candidates.size();
+        this.coupons = new CompiledCoupon[n];
+        this.standalone = new long[n];
+        this.groupMasks = new long[n];
+        this.prefixSums = new long[n + 1];
+        this.discountedLines = new int[n][];
+        this.lineDiscounts = new long[n][];
+        for (int i = 0; i < n; i++) {
+            Candidate candidate = candidates.get(i);
+            coupons[i] = candidate.getCoupon();
+            standalone[i] = candidate.getDiscount();
+            groupMasks[i] = groupMasksByCouponId.getOrDefault(candidate.getCoupon().getId(), 0L);
+            prefixSums[i + 1] = prefixSums[i] + standalone[i];
+            splitByLine(i, candidate.getPlan(), cart.size());
+        }
+        this.lineTotals = new long[cart.size()];
+        for (int line = 0; line < lineTotals.length; line++) {
+            lineTotals[line] = cart.lineTotal(line);
+        }
+        this.lineSums = new long[cart.size()];
+        this.cartTotal = cart.total();
+        this.maxCoupons = Math.min(maxCoupons, n);
+        this.chosen = new int[this.maxCoupons];
+        this.gains = new long[n + Long.SIZE];
+        this.deadlineNanos = System.nanoTime() + timeBudgetNanos;
+    }
+
+    private void splitByLine(int i, DiscountPlan plan, int lines) {
+        if (coupons[i].isOrderLevel()) {
+            discountedLines[i] = NO_LINES;
+            lineDiscounts[i] = NO_AMOUNTS;
+            return;
+        }
+        int count = 0;
+        for (int line = 0; line < lines; line++) {
+            if (plan.lineDiscount(line) > 0) {
+                count++;
+            }
+        }
+        discountedLines[i] = new int[count];
+        lineDiscounts[i] = new long[count];
+        count = 0;
+        for (int line = 0; line < lines; line++) {
+            if (plan.lineDiscount(line) > 0) {
+                discountedLines[i][count] = line;
+                lineDiscounts[i][count++] = plan.lineDiscount(line);
+            }
+        }
+    }
+
+    public Result solve() {
+        search(0, 0, 0L);
+        List<Applied> applied = evaluate(best, best.length);
+        return new Result(applied, bestValue, !timedOut, nodes);
+    }
+
+    private void search(int index, int depth, long usedGroups) {
+        if (timedOut) {
+            return;
+        }
+        if (++nodes % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+            timedOut = true;
+            return;
+        }
+
+        long value = value(depth);
+        if (value > bestValue) {
+            bestValue = value;
+            best = Arrays.copyOf(chosen, depth);
+        }
+        if (depth == maxCoupons || index == coupons.length || bestValue >= cartTotal) {
+            return;
+        }
+        if (bound(index, depth, usedGroups, value) <= bestValue) {
+            return;
+        }
+
+        for (int i = index; i < coupons.length; i++) {
+            if ((groupMasks[i] & usedGroups) != 0) {
+                continue;
+            }
+            // Everything past i is at most standalone[i] each, so stop once that cannot win
+            int slots = Math.min(maxCoupons - depth, coupons.length - i);
+            if (Math.min(cartTotal, value + prefixSums[i + slots] - prefixSums[i]) <= bestValue) {
+                return;
+            }
+            chosen[depth] = i;
+            addItemLevel(i, 1);
+            search(i + 1, depth + 1, usedGroups | groupMasks[i]);
+            addItemLevel(i, -1);
+            if (timedOut) {
+                return;
+            }
+        }
+    }
+
+    // Adds (sign 1) or takes back (sign -1) coupon i's line discounts, keeping itemLevel
+    // equal to the capped sum over all lines
+    private void addItemLevel(int i, int sign) {
+        int[] lines = discountedLines[i];
+        long[] amounts = lineDiscounts[i];
+        for (int k = 0; k < lines.length; k++) {
+            int line = lines[k];
+            long before = Math.min(lineSums[line], lineTotals[line]);
+            lineSums[line] += sign * amounts[k];
+            itemLevel += Math.min(lineSums[line], lineTotals[line]) - before;
+        }
+    }
+
+    // What coupon i would still add to the current combination's item-level discount
+    private long lineHeadroom(int i) {
+        int[] lines = discountedLines[i];
+        long[] amounts = lineDiscounts[i];
+        long gain = 0L;
+        for (int k = 0; k < lines.length; k++) {
+            gain += Math.min(amounts[k], Math.max(0L, lineTotals[lines[k]] - lineSums[lines[k]]));
+        }
+        return gain;
+    }
+
+    // Ceiling on any extension of the current combination: each remaining coupon adds at
+    // most its standalone discount (item-level ones at most what their lines have left,
+    // order-level ones at most their discount on what is left of the subtotal), each
+    // exclusivity group contributes one member and only the free slots can be filled
+    private long bound(int index, int depth, long usedGroups, long value) {
+        long subtotal = cartTotal - value;
+        int slots = maxCoupons - depth;
+        int count = 0;
+        Arrays.fill(groupBest, 0L);
+        for (int i = index; i < coupons.length; i++) {
+            if ((groupMasks[i] & usedGroups) != 0) {
+                continue;
+            }
+            long gain = coupons[i].isOrderLevel()
+                    ? Math.min(standalone[i], coupons[i].discountOnSubtotal(subtotal))
+                    : lineHeadroom(i);
+            if (groupMasks[i] == 0) {
+                gains[count++] = gain;
+            } else {
+                // A coupon in several groups is counted under its lowest one
+                int group = Long.numberOfTrailingZeros(groupMasks[i]);
+                groupBest[group] = Math.max(groupBest[group], gain);
+            }
+        }
+        for (long gain : groupBest) {
+            if (gain > 0) {
+                gains[count++] = gain;
+            }
+        }
+        return value + Math.min(subtotal, topSum(gains, count, slots));
+    }
+
+    // Sum of the largest k values among the first count entries, reorders the array
+    private static long topSum(long[] values, int count, int k) {
+        if (k < count) {
+            Arrays.sort(values, 0, count);
+        }
+        long sum = 0L;
+        for (int i = count - 1; i >= Math.max(0, count - k); i--) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    // Every line is capped at its total, so itemLevel never exceeds cartTotal
+    private long value(int depth) {
+        long subtotal = cartTotal - itemLevel;
+        long total = itemLevel;
+        for (int k = 0; k < depth && subtotal > 0; k++) {
+            CompiledCoupon coupon = coupons[chosen[k]];
+            if (coupon.isOrderLevel()) {
+                long discount = Math.min(coupon.discountOnSubtotal(subtotal), subtotal);
+                subtotal -= discount;
+                total += discount;
+            }
+        }
+        return total;
+    }
+
+    // Per-coupon contributions for the chosen combination, in application order; an
+    // item-level coupon gets what its lines had left after the coupons before it
+    private List<Applied> evaluate(int[] selection, int depth) {
+        List<Applied> applied = new ArrayList<>(depth);
+        Arrays.fill(lineSums, 0L);
+        itemLevel = 0L;
+        long subtotal = cartTotal;
+        for (int k = 0; k < depth; k++) {
+            int i = selection[k];
+            if (!coupons[i].isOrderLevel()) {
+                long discount = lineHeadroom(i);
+                addItemLevel(i, 1);
+                subtotal -= discount;
+                applied.add(new Applied(coupons[i], discount));
+            }
+        }
+        for (int k = 0; k < depth; k++) {
+            int i = selection[k];
+            if (coupons[i].isOrderLevel()) {
+                long discount = Math.min(coupons[i].discountOnSubtotal(subtotal), subtotal);
+                subtotal -= discount;
+                applied.add(new Applied(coupons[i], discount));
+            }
+        }
+        return applied;
+    }
+
+    @Getter
+    public static final class Candidate {
+        private final CompiledCoupon coupon;
+        private final DiscountPlan plan;
+
+        public Candidate(CompiledCoupon coupon, DiscountPlan plan) {
+            this.coupon = coupon;
+            this.plan = plan;
+        }
+
+        public long getDiscount() {
+            return plan.total();
+        }
+    }
+
+    @Getter
+    public static final class Applied {
+        private final CompiledCoupon coupon;
+        private final long discount;
+
+        private Applied(CompiledCoupon coupon, long discount) {
+            this.coupon = coupon;
+            this.discount = discount;
+        }
+    }
+
+    @Getter
+    public static final class Result {
+        private final List<Applied> applied;
+        private final long totalDiscount;
+        private final boolean optimal;
+        private final long nodesExplored;
+
+        private Result(List<Applied> applied, long totalDiscount, boolean optimal, long nodesExplored) {
+            this.applied = Collections.unmodifiableList(applied);
+            this.totalDiscount = totalDiscount;
+            this.optimal = optimal;
+            this.nodesExplored = nodesExplored;
+        }
+    }
+}
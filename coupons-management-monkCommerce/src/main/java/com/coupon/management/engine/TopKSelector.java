@@ -0,0 +1,81 @@
+package com.coupon.management.engine;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Keeps the best `limit` coupons by discount in a bounded min-heap. Offers must come
+// in catalog order: on equal discounts the earlier coupon ranks higher, as it did
+// with the stable sort over the full list. Selectors over consecutive slices of the
+// candidates can be merged, giving the same winners as a single pass.
+public final class TopKSelector {
+
+    private static final Comparator<Scored> WORST_FIRST = Comparator
+            .comparingLong(Scored::getDiscount)
+            .thenComparing(Comparator.comparingInt(Scored::getSequence).reversed());
+
+    private final int limit;
+    private final PriorityQueue<Scored> heap;
+    private int sequence;
+
+    public TopKSelector(Integer limit) {
+        this(limit, 0);
+    }
+
+    // For a slice of the candidates, firstSequence is the position of its first coupon
+    public TopKSelector(Integer limit, int firstSequence) {
+        this.limit = limit != null ? limit : Integer.MAX_VALUE;
+        this.heap = new PriorityQueue<>(Math.min(this.limit, 64), WORST_FIRST);
+        this.sequence = firstSequence;
+    }
+
+    // False when a coupon whose discount cannot exceed upperBound would never make the cut
+    public boolean canAdmit(long upperBound) {
+        return heap.size() < limit || upperBound > heap.peek().getDiscount();
+    }
+
+    public void offer(CompiledCoupon coupon, long discount) {
+        int position = sequence++;
+        if (discount <= 0 || !canAdmit(discount)) {
+            return;
+        }
+        if (heap.size() == limit) {
+            heap.poll();
+        }
+        heap.add(new Scored(coupon, discount, position));
+    }
+
+    public void merge(TopKSelector other) {
+        for (Scored scored : other.heap) {
+            if (heap.size() < limit) {
+                heap.add(scored);
+            } else if (WORST_FIRST.compare(scored, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(scored);
+            }
+        }
+    }
+
+    // Winners by highest discount first
+    public List<Scored> results() {
+        List<Scored> results = new ArrayList<>(heap);
+        results.sort(WORST_FIRST.reversed());
+        return results;
+    }
+
+    @Getter
+    public static final class Scored {
+        private final CompiledCoupon coupon;
+        private final long discount;
+        private final int sequence;
+
+        private Scored(CompiledCoupon coupon, long discount, int sequence) {
+            this.coupon = coupon;
+            this.discount = discount;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import javax.validation.constraints.Min;
@@ -17,7 +19,8 @@ import java.util.List;
 public class BxGyRule {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "bxgy_rules_seq")
+    @SequenceGenerator(name = "bxgy_rules_seq", sequenceName = "bxgy_rules_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -30,8 +33,10 @@ public class BxGyRule {
     private Integer buyQuantity;
 
     @ElementCollection
+    @Fetch(FetchMode.SUBSELECT)
     @CollectionTable(name = "bxgy_buy_products",
-            joinColumns = @JoinColumn(name = "rule_id"))
+            joinColumns = @JoinColumn(name = "rule_id"),
+            indexes = @Index(name = "idx_bxgy_buy_products_product", columnList = "product_id, rule_id"))
     @Column(name = "product_id")
     private List<Long> buyProductIds;
 
@@ -40,8 +45,10 @@ public class BxGyRule {
     private Integer getQuantity;
 
     @ElementCollection
+    @Fetch(FetchMode.SUBSELECT)
     @CollectionTable(name = "bxgy_get_products",
-            joinColumns = @JoinColumn(name = "rule_id"))
+            joinColumns = @JoinColumn(name = "rule_id"),
+            indexes = @Index(name = "idx_bxgy_get_products_product", columnList = "product_id, rule_id"))
     @Column(name = "product_id")
     private List<Long> getProductIds;
 
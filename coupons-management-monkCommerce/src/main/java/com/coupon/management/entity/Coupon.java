@@ -6,6 +6,8 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import javax.validation.constraints.Min;
@@ -15,15 +17,21 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "coupons")
+// (active, validUntil) lets the catalog load range-scan past expired coupons
+@Table(name = "coupons", indexes = {
+        @Index(name = "idx_coupons_active_valid_until", columnList = "active, validUntil")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Coupon {
 
+    // Ids come from a pooled sequence (one round trip per 50 rows) so Hibernate can
+    // batch the inserts, which an IDENTITY column rules out
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupons_seq")
+    @SequenceGenerator(name = "coupons_seq", sequenceName = "coupons_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Coupon code is required")
@@ -63,21 +71,28 @@ public class Coupon {
     @Min(value = 1, message = "Maximum usage must be at least 1")
     private Integer maxUsage;
 
+    // Only ever changed through the relative updates in CouponRepository, see CouponUsageLedger
     @Min(value = 0, message = "Current usage must be non-negative")
+    @Column(updatable = false)
     private Integer currentUsage = 0;
 
     @Min(value = 1, message = "Maximum discount amount must be at least 1")
     private BigDecimal maxDiscountAmount;
 
     // For product-wise coupons
+    // Collections are loaded with one subselect per collection for every coupon a query
+    // returned, so reading N coupons costs a fixed number of statements instead of N + 1
     @ElementCollection
+    @Fetch(FetchMode.SUBSELECT)
     @CollectionTable(name = "coupon_applicable_products",
-            joinColumns = @JoinColumn(name = "coupon_id"))
+            joinColumns = @JoinColumn(name = "coupon_id"),
+            indexes = @Index(name = "idx_coupon_applicable_products_product", columnList = "product_id, coupon_id"))
     @Column(name = "product_id")
     private List<Long> applicableProductIds;
 
     // For BxGy coupons
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, mappedBy = "coupon")
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY, mappedBy = "coupon")
+    @Fetch(FetchMode.SUBSELECT)
     @JsonManagedReference
     private List<BxGyRule> bxgyRules;
 
@@ -0,0 +1,42 @@
+package com.coupon.management.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// One row of the coupon change outbox; the id doubles as the change version
+@Entity
+@Table(name = "coupon_changes", indexes = @Index(name = "idx_coupon_changes_changed_at", columnList = "changedAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Null when a change covers many coupons at once
+    private Long couponId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChangeType changeType;
+
+    // Instance that made the change, see coupon.node-id
+    @Column(nullable = false)
+    private String nodeId;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED,
+        IMPORTED
+    }
+}
@@ -0,0 +1,9 @@
+package com.coupon.management.exception;
+
+// A request turned away because its endpoint or executor is at capacity; answered with 503
+public class ServiceBusyException extends RuntimeException {
+
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+}
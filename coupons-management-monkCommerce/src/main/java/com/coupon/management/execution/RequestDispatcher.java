@@ -0,0 +1,113 @@
+package com.coupon.management.execution;
+
+import com.coupon.management.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+// Runs controller work on the executor of its lane and hands back a future, so the
+// Tomcat thread is released while the work runs. Each endpoint may have at most
+// coupon.async.limit.<endpoint> requests in flight (queued or running, default the
+// lane's threads plus queue); beyond that, or when the lane's queue is full, the
+// request is rejected with ServiceBusyException rather than left waiting.
+// With coupon.async.enabled=false the work runs on the calling thread, limits still apply.
+@Component
+public class RequestDispatcher {
+
+    public enum Lane {
+        // Cart evaluation and coupon application
+        CHECKOUT,
+        // Coupon reads and writes
+        ADMIN
+    }
+
+    private final boolean enabled;
+    private final Map<Lane, ThreadPoolTaskExecutor> executors = new EnumMap<>(Lane.class);
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Environment environment;
+    private final MeterRegistry registry;
+
+    public RequestDispatcher(ThreadPoolTaskExecutor checkoutRequestExecutor,
+                             ThreadPoolTaskExecutor adminRequestExecutor,
+                             Environment environment, MeterRegistry registry,
+                             @Value("${coupon.async.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.environment = environment;
+        this.registry = registry;
+        executors.put(Lane.CHECKOUT, checkoutRequestExecutor);
+        executors.put(Lane.ADMIN, adminRequestExecutor);
+        for (Map.Entry<Lane, ThreadPoolTaskExecutor> entry : executors.entrySet()) {
+            String lane = entry.getKey().name().toLowerCase();
+            ThreadPoolTaskExecutor executor = entry.getValue();
+            Gauge.builder("coupon.requests.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                    .description("Requests waiting for a thread of the lane's executor")
+                    .tag("lane", lane)
+                    .register(registry);
+            Gauge.builder("coupon.requests.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                    .description("Requests running on the lane's executor")
+                    .tag("lane", lane)
+                    .register(registry);
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Lane lane, String endpoint, Supplier<T> work) {
+        Endpoint limit = endpoints.computeIfAbsent(endpoint, name -> new Endpoint(name, lane));
+        if (!limit.permits.tryAcquire()) {
+            limit.rejected.increment();
+            throw new ServiceBusyException(endpoint + " already has " + limit.maxInFlight + " requests in progress");
+        }
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(work.get());
+            } finally {
+                limit.permits.release();
+            }
+        }
+
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(work, executors.get(lane));
+            future.whenComplete((value, error) -> limit.permits.release());
+            return future;
+        } catch (RejectedExecutionException e) {
+            limit.permits.release();
+            limit.rejected.increment();
+            throw new ServiceBusyException("Too many " + lane.name().toLowerCase() + " requests queued");
+        }
+    }
+
+    private final class Endpoint {
+        private final int maxInFlight;
+        private final Semaphore permits;
+        private final Counter rejected;
+
+        private Endpoint(String name, Lane lane) {
+            ThreadPoolTaskExecutor executor = executors.get(lane);
+            BlockingQueue<Runnable> queue = executor.getThreadPoolExecutor().getQueue();
+            int laneCapacity = executor.getMaxPoolSize() + queue.size() + queue.remainingCapacity();
+            this.maxInFlight = environment.getProperty("coupon.async.limit." + name, Integer.class, laneCapacity);
+            this.permits = new Semaphore(maxInFlight);
+            Gauge.builder("coupon.requests.in-flight", permits, p -> maxInFlight - p.availablePermits())
+                    .description("Requests of the endpoint queued or running")
+                    .tag("endpoint", name)
+                    .register(registry);
+            this.rejected = Counter.builder("coupon.requests.rejected")
+                    .description("Requests turned away because the endpoint or its lane was full")
+                    .tag("endpoint", name)
+                    .register(registry);
+        }
+    }
+}
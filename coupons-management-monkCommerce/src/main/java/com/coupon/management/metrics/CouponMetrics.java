@@ -0,0 +1,89 @@
+package com.coupon.management.metrics;
+
+import com.coupon.management.catalog.CouponCatalog;
+import com.coupon.management.entity.Coupon;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Coupon engine meters. Endpoint latency comes from Spring MVC's http.server.requests;
+// these cover what happens inside a request. Everything is registered up front so
+// recording is a map lookup and an atomic update, and evaluation time is only measured
+// on one cart in evaluationTimingSample to keep clock reads out of most evaluations.
+@Component
+public class CouponMetrics {
+
+    private final Map<Coupon.CouponType, Timer> evaluationTimers = new EnumMap<>(Coupon.CouponType.class);
+    private final Map<Coupon.CouponType, Counter> appliedCounters = new EnumMap<>(Coupon.CouponType.class);
+    private final Map<Coupon.CouponType, Counter> rejectedCounters = new EnumMap<>(Coupon.CouponType.class);
+    private final DistributionSummary evaluatedPerCart;
+    private final int evaluationTimingSample;
+
+    public CouponMetrics(MeterRegistry registry, CouponCatalog catalog,
+                         @Value("${coupon.metrics.evaluation-timing-sample:16}") int evaluationTimingSample) {
+        this.evaluationTimingSample = Math.max(1, evaluationTimingSample);
+        for (Coupon.CouponType type : Coupon.CouponType.values()) {
+            String tag = type.name();
+            evaluationTimers.put(type, Timer.builder("coupon.evaluation")
+                    .description("Time spent computing discounts of one coupon type for one sampled cart")
+                    .tag("type", tag)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            appliedCounters.put(type, Counter.builder("coupon.applied")
+                    .description("Coupons applied to a cart")
+                    .tag("type", tag)
+                    .register(registry));
+            rejectedCounters.put(type, Counter.builder("coupon.rejected")
+                    .description("Coupons that could not be applied to a cart")
+                    .tag("type", tag)
+                    .register(registry));
+            Gauge.builder("coupon.catalog.coupons", catalog, c -> c.snapshot().count(type))
+                    .description("Active coupons in the in-memory catalog")
+                    .tag("type", tag)
+                    .register(registry);
+        }
+        evaluatedPerCart = DistributionSummary.builder("coupon.evaluation.coupons")
+                .description("Coupons whose discount was computed for one cart")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("coupon.catalog.size", catalog, c -> c.snapshot().size())
+                .description("Active coupons in the in-memory catalog")
+                .register(registry);
+        Gauge.builder("coupon.catalog.version", catalog, c -> c.snapshot().getVersion())
+                .description("Number of catalog rebuilds since startup")
+                .register(registry);
+    }
+
+    public EvaluationTally newTally() {
+        return new EvaluationTally(ThreadLocalRandom.current().nextInt(evaluationTimingSample) == 0);
+    }
+
+    public void recordEvaluation(EvaluationTally tally) {
+        int evaluated = 0;
+        for (Map.Entry<Coupon.CouponType, Timer> entry : evaluationTimers.entrySet()) {
+            int count = tally.count(entry.getKey());
+            if (count > 0 && tally.isTimed()) {
+                entry.getValue().record(tally.nanos(entry.getKey()), TimeUnit.NANOSECONDS);
+            }
+            evaluated += count;
+        }
+        evaluatedPerCart.record(evaluated);
+    }
+
+    public void couponApplied(Coupon.CouponType type) {
+        appliedCounters.get(type).increment();
+    }
+
+    public void couponRejected(Coupon.CouponType type) {
+        rejectedCounters.get(type).increment();
+    }
+}
@@ -0,0 +1,55 @@
+package com.coupon.management.metrics;
+
+import com.coupon.management.entity.Coupon;
+
+// Evaluation count, and for sampled carts evaluation time, per coupon type for one cart.
+// Each thread fills its own tally and adds it to the cart's tally once, so the hot loop
+// never touches a meter; unsampled carts skip the clock reads altogether.
+public final class EvaluationTally {
+
+    private static final Coupon.CouponType[] TYPES = Coupon.CouponType.values();
+
+    private final boolean timed;
+    private final long[] nanos = new long[TYPES.length];
+    private final int[] counts = new int[TYPES.length];
+
+    public EvaluationTally(boolean timed) {
+        this.timed = timed;
+    }
+
+    // Pair with stop: long start = tally.start(); ...; tally.stop(type, start)
+    public long start() {
+        return timed ? System.nanoTime() : 0L;
+    }
+
+    public void stop(Coupon.CouponType type, long start) {
+        if (timed) {
+            nanos[type.ordinal()] += System.nanoTime() - start;
+        }
+        counts[type.ordinal()]++;
+    }
+
+    // A tally for one slice of the same cart
+    public EvaluationTally slice() {
+        return new EvaluationTally(timed);
+    }
+
+    public synchronized void addAll(EvaluationTally other) {
+        for (int i = 0; i < TYPES.length; i++) {
+            nanos[i] += other.nanos[i];
+            counts[i] += other.counts[i];
+        }
+    }
+
+    boolean isTimed() {
+        return timed;
+    }
+
+    synchronized long nanos(Coupon.CouponType type) {
+        return nanos[type.ordinal()];
+    }
+
+    synchronized int count(Coupon.CouponType type) {
+        return counts[type.ordinal()];
+    }
+}
@@ -0,0 +1,112 @@
+package com.coupon.management.repository;
+
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Inserts for the bulk import as one JDBC batch per table. Hibernate flushes element
+// collections one collection at a time, so with products on both coupons and BxGy
+// rules its batches hold a row or two each; here every table gets a single batch.
+@Repository
+@RequiredArgsConstructor
+public class CouponBulkRepository {
+
+    // Matches allocationSize on the entity id generators: every value drawn from a
+    // sequence reserves the block of ids ending at it, the same as Hibernate's pooled ids
+    private static final int SEQUENCE_ALLOCATION = 50;
+
+    private static final String INSERT_COUPON = "INSERT INTO coupons (id, code, name, description, type, "
+            + "discount_value, discount_type, active, valid_from, valid_until, minimum_cart_value, max_usage, "
+            + "current_usage, max_discount_amount, repetition_limit, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_APPLICABLE_PRODUCT =
+            "INSERT INTO coupon_applicable_products (coupon_id, product_id) VALUES (?, ?)";
+    private static final String INSERT_RULE =
+            "INSERT INTO bxgy_rules (id, coupon_id, buy_quantity, get_quantity, priority) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_BUY_PRODUCT = "INSERT INTO bxgy_buy_products (rule_id, product_id) VALUES (?, ?)";
+    private static final String INSERT_GET_PRODUCT = "INSERT INTO bxgy_get_products (rule_id, product_id) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Assigns ids to the coupons and their rules, then writes them; joins the caller's transaction
+    public void insertAll(List<Coupon> coupons) {
+        List<BxGyRule> rules = new ArrayList<>();
+        for (Coupon coupon : coupons) {
+            if (coupon.getBxgyRules() != null) {
+                rules.addAll(coupon.getBxgyRules());
+            }
+        }
+        long[] couponIds = reserveIds("coupons_seq", coupons.size());
+        long[] ruleIds = reserveIds("bxgy_rules_seq", rules.size());
+        for (int i = 0; i < coupons.size(); i++) {
+            coupons.get(i).setId(couponIds[i]);
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            rules.get(i).setId(ruleIds[i]);
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> couponRows = new ArrayList<>(coupons.size());
+        List<Object[]> productRows = new ArrayList<>();
+        for (Coupon coupon : coupons) {
+            couponRows.add(new Object[]{coupon.getId(), coupon.getCode(), coupon.getName(), coupon.getDescription(),
+                    coupon.getType().name(), coupon.getDiscountValue(), coupon.getDiscountType().name(),
+                    coupon.isActive(), timestamp(coupon.getValidFrom()), timestamp(coupon.getValidUntil()),
+                    coupon.getMinimumCartValue(), coupon.getMaxUsage(), coupon.getCurrentUsage(),
+                    coupon.getMaxDiscountAmount(), coupon.getRepetitionLimit(), now, now});
+            addProductRows(productRows, coupon.getId(), coupon.getApplicableProductIds());
+        }
+        List<Object[]> ruleRows = new ArrayList<>(rules.size());
+        List<Object[]> buyRows = new ArrayList<>();
+        List<Object[]> getRows = new ArrayList<>();
+        for (BxGyRule rule : rules) {
+            ruleRows.add(new Object[]{rule.getId(), rule.getCoupon().getId(), rule.getBuyQuantity(),
+                    rule.getGetQuantity(), rule.getPriority()});
+            addProductRows(buyRows, rule.getId(), rule.getBuyProductIds());
+            addProductRows(getRows, rule.getId(), rule.getGetProductIds());
+        }
+
+        batchUpdate(INSERT_COUPON, couponRows);
+        batchUpdate(INSERT_APPLICABLE_PRODUCT, productRows);
+        batchUpdate(INSERT_RULE, ruleRows);
+        batchUpdate(INSERT_BUY_PRODUCT, buyRows);
+        batchUpdate(INSERT_GET_PRODUCT, getRows);
+    }
+
+    private long[] reserveIds(String sequence, int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        while (filled < count) {
+            Long last = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+            for (long id = Math.max(1, last - SEQUENCE_ALLOCATION + 1); id <= last && filled < count; id++) {
+                ids[filled++] = id;
+            }
+        }
+        return ids;
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+
+    private static void addProductRows(List<Object[]> rows, Long ownerId, List<Long> productIds) {
+        if (productIds != null) {
+            for (Long productId : productIds) {
+                rows.add(new Object[]{ownerId, productId});
+            }
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
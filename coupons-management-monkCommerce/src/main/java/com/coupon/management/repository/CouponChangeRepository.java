@@ -0,0 +1,28 @@
+package com.coupon.management.repository;
+
+import com.coupon.management.entity.CouponChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CouponChangeRepository extends JpaRepository<CouponChange, Long> {
+
+    List<CouponChange> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    List<CouponChange> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM CouponChange c")
+    long findLatestId();
+
+    @Modifying
+    @Query("DELETE FROM CouponChange c WHERE c.changedAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
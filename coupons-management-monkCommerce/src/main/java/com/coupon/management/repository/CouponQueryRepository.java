@@ -0,0 +1,19 @@
+package com.coupon.management.repository;
+
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.dto.CouponResponse;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Filtered coupon listings that never load the whole table: keyset pages and a cursor walk.
+// Rows are read straight into CouponResponse, never as managed Coupon entities, so the
+// persistence context stays empty and there is nothing to snapshot or dirty-check.
+public interface CouponQueryRepository {
+
+    // Up to limit coupons with an id above afterId (all ids when null), in id order
+    List<CouponResponse> findPage(CouponFilter filter, Long afterId, int limit);
+
+    // Hands every matching coupon to action in id order, read through one database cursor
+    void forEachMatching(CouponFilter filter, Consumer<CouponResponse> action);
+}
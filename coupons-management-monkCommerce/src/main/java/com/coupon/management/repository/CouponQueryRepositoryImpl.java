@@ -0,0 +1,113 @@
+package com.coupon.management.repository;
+
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.entity.Coupon;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Only the filters that are set become predicates, so no "IS NULL OR" parameter tricks
+// end up in the SQL and the (active, type, validity) index stays usable
+public class CouponQueryRepositoryImpl implements CouponQueryRepository {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<CouponResponse> findPage(CouponFilter filter, Long afterId, int limit) {
+        return toResponses(query(filter, afterId)
+                .setMaxResults(limit)
+                .getResultList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachMatching(CouponFilter filter, Consumer<CouponResponse> action) {
+        TypedQuery<Object[]> query = query(filter, null)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE);
+        try (Stream<Object[]> rows = query.getResultStream()) {
+            rows.forEach(row -> action.accept(toResponse(row)));
+        }
+    }
+
+    // Selects the CouponResponse columns in the order toResponse reads them
+    private TypedQuery<Object[]> query(CouponFilter filter, Long afterId) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> criteria = builder.createQuery(Object[].class);
+        Root<Coupon> coupon = criteria.from(Coupon.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (afterId != null) {
+            predicates.add(builder.greaterThan(coupon.get("id"), afterId));
+        }
+        if (filter.getActive() != null) {
+            predicates.add(builder.equal(coupon.get("active"), filter.getActive()));
+        }
+        if (filter.getType() != null) {
+            predicates.add(builder.equal(coupon.get("type"), filter.getType()));
+        }
+        if (filter.getValidUntil() != null) {
+            predicates.add(builder.or(coupon.get("validFrom").isNull(),
+                    builder.lessThanOrEqualTo(coupon.get("validFrom"), filter.getValidUntil())));
+        }
+        if (filter.getValidFrom() != null) {
+            predicates.add(builder.or(coupon.get("validUntil").isNull(),
+                    builder.greaterThanOrEqualTo(coupon.get("validUntil"), filter.getValidFrom())));
+        }
+        criteria.multiselect(coupon.get("id"), coupon.get("code"), coupon.get("name"), coupon.get("description"),
+                        coupon.get("type"), coupon.get("discountValue"), coupon.get("discountType"),
+                        coupon.get("active"), coupon.get("validFrom"), coupon.get("validUntil"),
+                        coupon.get("minimumCartValue"), coupon.get("maxUsage"), coupon.get("currentUsage"),
+                        coupon.get("maxDiscountAmount"), coupon.get("repetitionLimit"),
+                        coupon.get("createdAt"), coupon.get("updatedAt"))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(coupon.get("id")));
+        return entityManager.createQuery(criteria);
+    }
+
+    private static List<CouponResponse> toResponses(List<Object[]> rows) {
+        List<CouponResponse> responses = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            responses.add(toResponse(row));
+        }
+        return responses;
+    }
+
+    private static CouponResponse toResponse(Object[] row) {
+        CouponResponse response = new CouponResponse();
+        response.setId((Long) row[0]);
+        response.setCode((String) row[1]);
+        response.setName((String) row[2]);
+        response.setDescription((String) row[3]);
+        response.setType((Coupon.CouponType) row[4]);
+        response.setDiscountValue((BigDecimal) row[5]);
+        response.setDiscountType((Coupon.DiscountType) row[6]);
+        response.setActive((Boolean) row[7]);
+        response.setValidFrom((LocalDateTime) row[8]);
+        response.setValidUntil((LocalDateTime) row[9]);
+        response.setMinimumCartValue((BigDecimal) row[10]);
+        response.setMaxUsage((Integer) row[11]);
+        response.setCurrentUsage((Integer) row[12]);
+        response.setMaxDiscountAmount((BigDecimal) row[13]);
+        response.setRepetitionLimit((Integer) row[14]);
+        response.setCreatedAt((LocalDateTime) row[15]);
+        response.setUpdatedAt((LocalDateTime) row[16]);
+        return response;
+    }
+}
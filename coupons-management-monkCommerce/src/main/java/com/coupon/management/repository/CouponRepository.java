@@ -3,33 +3,45 @@ package com.coupon.management.repository;
 
 import com.coupon.management.entity.Coupon;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CouponRepository extends JpaRepository<Coupon, Long> {
+public interface CouponRepository extends JpaRepository<Coupon, Long>, CouponQueryRepository {
 
     Optional<Coupon> findByCode(String code);
 
     List<Coupon> findByActiveTrue();
 
-    @Query("SELECT c FROM Coupon c WHERE c.active = true AND " +
-            "(c.validFrom IS NULL OR c.validFrom <= :currentTime) AND " +
-            "(c.validUntil IS NULL OR c.validUntil >= :currentTime) AND " +
-            "(c.maxUsage IS NULL OR c.currentUsage < c.maxUsage)")
-    List<Coupon> findActiveAndValidCoupons(@Param("currentTime") LocalDateTime currentTime);
+    // Active coupons that have not expired, as two range scans over (active, validUntil)
+    // since an "IS NULL OR >=" predicate cannot use the index
+    List<Coupon> findByActiveTrueAndValidUntilIsNull();
 
-    @Query("SELECT c FROM Coupon c WHERE c.active = true AND c.type = :type AND " +
-            "(c.validFrom IS NULL OR c.validFrom <= :currentTime) AND " +
-            "(c.validUntil IS NULL OR c.validUntil >= :currentTime) AND " +
-            "(c.maxUsage IS NULL OR c.currentUsage < c.maxUsage)")
-    List<Coupon> findActiveAndValidCouponsByType(@Param("type") Coupon.CouponType type,
-                                                 @Param("currentTime") LocalDateTime currentTime);
+    List<Coupon> findByActiveTrueAndValidUntilGreaterThanEqual(LocalDateTime currentTime);
 
     boolean existsByCode(String code);
+
+    @Query("SELECT c.code FROM Coupon c WHERE c.code IN :codes")
+    List<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
+    // Relative update so concurrent instances and admin edits never overwrite each other
+    @Modifying
+    @Query("UPDATE Coupon c SET c.currentUsage = c.currentUsage + :delta WHERE c.id = :id")
+    int incrementUsage(@Param("id") Long id, @Param("delta") int delta);
+
+    // Reserves delta usages only while they fit under maxUsage; 0 rows means they do not
+    @Modifying
+    @Query("UPDATE Coupon c SET c.currentUsage = c.currentUsage + :delta WHERE c.id = :id AND " +
+            "(c.maxUsage IS NULL OR c.currentUsage + :delta <= c.maxUsage)")
+    int reserveUsage(@Param("id") Long id, @Param("delta") int delta);
+
+    @Query("SELECT c.currentUsage FROM Coupon c WHERE c.id = :id")
+    Integer findCurrentUsage(@Param("id") Long id);
 } 
\ No newline at end of file
@@ -0,0 +1,278 @@
+package com.coupon.management.service;
+
+import com.coupon.management.catalog.CouponCatalogChangedEvent;
+import com.coupon.management.catalog.CouponChangeFeed;
+import com.coupon.management.dto.CouponDataDto;
+import com.coupon.management.dto.CouponImportResponse;
+import com.coupon.management.dto.CouponRequest;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.entity.CouponChange;
+import com.coupon.management.exception.CouponException;
+import com.coupon.management.repository.CouponBulkRepository;
+import com.coupon.management.repository.CouponRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Bulk import of NDJSON coupon records (one CouponDataDto per line). Lines are parsed and
+// validated one at a time and written in batches, each in its own transaction as one
+// JDBC batch per table, so heap use does not grow with the input and a bad line only
+// fails itself. Codes are checked once per batch: within the batch in memory, and against
+// the table, which by then also holds every earlier batch of the same import. An import
+// that cannot be read to the end stops where it is: the batch being collected is dropped,
+// batches already written stay, and the error says how far the import got.
+@Service
+@Slf4j
+public class CouponImportService {
+
+    private final CouponRepository couponRepository;
+    private final CouponBulkRepository couponBulkRepository;
+    private final CouponChangeFeed couponChangeFeed;
+    private final TransactionTemplate batchTransaction;
+    private final Validator validator;
+    private final ObjectReader recordReader;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${coupon.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${coupon.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public CouponImportService(CouponRepository couponRepository, CouponBulkRepository couponBulkRepository,
+                               CouponChangeFeed couponChangeFeed, PlatformTransactionManager transactionManager,
+                               Validator validator, ObjectMapper objectMapper,
+                               ApplicationEventPublisher eventPublisher) {
+        this.couponRepository = couponRepository;
+        this.couponBulkRepository = couponBulkRepository;
+        this.couponChangeFeed = couponChangeFeed;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.recordReader = objectMapper.readerFor(CouponDataDto.class);
+        this.eventPublisher = eventPublisher;
+    }
+
+    public CouponImportResponse importCoupons(InputStream input) {
+        Report report = new Report();
+        List<PendingCoupon> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                report.totalLines++;
+                PendingCoupon pending = parse(lineNumber, line, report);
+                if (pending != null) {
+                    batch.add(pending);
+                    if (batch.size() == batchSize) {
+                        write(batch, report);
+                    }
+                }
+            }
+            write(batch, report);
+        } catch (IOException | RuntimeException e) {
+            String message = "Coupon import aborted at line " + lineNumber + ": " + e.getMessage() + "; "
+                    + (report.imported > 0
+                    ? report.imported + " coupons up to line " + report.committedLine + " were imported"
+                    : "no coupons were imported");
+            log.error(message);
+            // Other nodes learn of the written batches from the change feed, this one only from the event
+            catalogChanged(report);
+            throw new CouponException(message, e);
+        }
+        catalogChanged(report);
+
+        report.errors.sort(Comparator.comparingLong(CouponImportResponse.LineError::getLine));
+        log.info("Coupon import finished: {} lines, {} imported, {} failed",
+                report.totalLines, report.imported, report.failed);
+        return new CouponImportResponse(report.totalLines, report.imported, report.failed,
+                report.errors, report.failed > report.errors.size());
+    }
+
+    // One catalog rebuild for the whole import instead of one per coupon
+    private void catalogChanged(Report report) {
+        if (report.imported > 0) {
+            eventPublisher.publishEvent(new CouponCatalogChangedEvent(null));
+        }
+    }
+
+    private PendingCoupon parse(long lineNumber, String line, Report report) {
+        CouponDataDto record;
+        try {
+            record = recordReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            report.fail(lineNumber, null, "Malformed record: " + e.getOriginalMessage());
+            return null;
+        }
+        if (record == null) {
+            report.fail(lineNumber, null, "Record must be a JSON object");
+            return null;
+        }
+
+        CouponRequest request = toRequest(record);
+        Set<ConstraintViolation<CouponRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            String error = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+            report.fail(lineNumber, record.getCode(), error);
+            return null;
+        }
+        if (record.getCurrentUsage() != null && record.getCurrentUsage() < 0) {
+            report.fail(lineNumber, record.getCode(), "currentUsage: Current usage must be non-negative");
+            return null;
+        }
+        return new PendingCoupon(lineNumber, request, record.getCurrentUsage());
+    }
+
+    private void write(List<PendingCoupon> batch, Report report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long lastLine = batch.get(batch.size() - 1).line;
+        Map<String, Long> firstLineByCode = new HashMap<>();
+        for (PendingCoupon pending : batch) {
+            firstLineByCode.putIfAbsent(pending.request.getCode(), pending.line);
+        }
+        Set<String> existing = new HashSet<>(couponRepository.findExistingCodes(firstLineByCode.keySet()));
+
+        List<PendingCoupon> accepted = new ArrayList<>(batch.size());
+        for (PendingCoupon pending : batch) {
+            String code = pending.request.getCode();
+            if (existing.contains(code)) {
+                report.fail(pending.line, code, "Coupon with code " + code + " already exists");
+            } else if (firstLineByCode.get(code) != pending.line) {
+                report.fail(pending.line, code, "Duplicate coupon code, first used on line " + firstLineByCode.get(code));
+            } else {
+                accepted.add(pending);
+            }
+        }
+        batch.clear();
+
+        try {
+            batchTransaction.executeWithoutResult(status -> {
+                List<Coupon> coupons = new ArrayList<>(accepted.size());
+                for (PendingCoupon pending : accepted) {
+                    coupons.add(pending.toCoupon());
+                }
+                couponBulkRepository.insertAll(coupons);
+                couponChangeFeed.append(null, CouponChange.ChangeType.IMPORTED);
+            });
+            report.imported += accepted.size();
+        } catch (RuntimeException e) {
+            // Something the line checks cannot see, such as a code created concurrently:
+            // redo the batch one coupon at a time so only the offending lines fail
+            log.warn("Coupon import batch of {} failed ({}), retrying coupons one by one",
+                    accepted.size(), e.getMessage());
+            for (PendingCoupon pending : accepted) {
+                try {
+                    batchTransaction.executeWithoutResult(status -> {
+                        Coupon coupon = pending.toCoupon();
+                        couponBulkRepository.insertAll(Collections.singletonList(coupon));
+                        couponChangeFeed.append(coupon.getId(), CouponChange.ChangeType.CREATED);
+                    });
+                    report.imported++;
+                } catch (RuntimeException single) {
+                    // Driver messages carry the statement after the first line
+                    String cause = NestedExceptionUtils.getMostSpecificCause(single).getMessage();
+                    report.fail(pending.line, pending.request.getCode(),
+                            "Could not store coupon: " + cause.split("\\R", 2)[0]);
+                }
+            }
+        }
+        report.committedLine = lastLine;
+    }
+
+    private static CouponRequest toRequest(CouponDataDto record) {
+        CouponRequest request = new CouponRequest();
+        request.setCode(record.getCode());
+        request.setName(record.getName());
+        request.setDescription(record.getDescription());
+        request.setType(record.getType());
+        request.setDiscountValue(record.getDiscountValue());
+        request.setDiscountType(record.getDiscountType());
+        request.setActive(record.isActive());
+        request.setValidFrom(record.getValidFrom());
+        request.setValidUntil(record.getValidUntil());
+        request.setMinimumCartValue(record.getMinimumCartValue());
+        request.setMaxUsage(record.getMaxUsage());
+        request.setMaxDiscountAmount(record.getMaxDiscountAmount());
+        request.setApplicableProductIds(record.getApplicableProductIds());
+        if (record.getRepetitionLimit() != null) {
+            request.setRepetitionLimit(record.getRepetitionLimit());
+        }
+        if (record.getBxgyRules() != null) {
+            request.setBxgyRules(record.getBxgyRules().stream()
+                    .map(rule -> new CouponRequest.BxGyRuleRequest(rule.getBuyQuantity(), rule.getBuyProductIds(),
+                            rule.getGetQuantity(), rule.getGetProductIds(),
+                            rule.getPriority() != null ? rule.getPriority() : 1))
+                    .collect(Collectors.toList()));
+        }
+        return request;
+    }
+
+    private static final class PendingCoupon {
+        private final long line;
+        private final CouponRequest request;
+        private final Integer currentUsage;
+
+        private PendingCoupon(long line, CouponRequest request, Integer currentUsage) {
+            this.line = line;
+            this.request = request;
+            this.currentUsage = currentUsage;
+        }
+
+        // A fresh entity per attempt, a rolled-back insert leaves its ids behind
+        private Coupon toCoupon() {
+            Coupon coupon = CouponService.newCoupon(request);
+            if (currentUsage != null) {
+                coupon.setCurrentUsage(currentUsage);
+            }
+            return coupon;
+        }
+    }
+
+    private final class Report {
+        private long totalLines;
+        private long imported;
+        private long failed;
+        // Last line of the last batch written; every coupon up to it is stored or reported
+        private long committedLine;
+        private final List<CouponImportResponse.LineError> errors = new ArrayList<>();
+
+        private void fail(long line, String code, String error) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new CouponImportResponse.LineError(line, code, error));
+            }
+        }
+    }
+}
@@ -1,26 +1,66 @@
 package com.coupon.management.service;
 
+import com.coupon.management.catalog.ApplicableCouponsCache;
+import com.coupon.management.catalog.CatalogSnapshot;
+import com.coupon.management.catalog.CouponCatalog;
+import com.coupon.management.catalog.CouponChangeFeed;
+import com.coupon.management.catalog.CouponCatalogChangedEvent;
+import com.coupon.management.catalog.CouponLookupCache;
+import com.coupon.management.dto.ApplicableCouponsBatchResponse;
 import com.coupon.management.dto.ApplicableCouponsResponse;
 import com.coupon.management.dto.CartRequest;
+import com.coupon.management.dto.CartResponse;
+import com.coupon.management.dto.CouponCombinationRequest;
+import com.coupon.management.dto.CouponCombinationResponse;
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.dto.CouponPageResponse;
 import com.coupon.management.dto.CouponRequest;
 import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.engine.CartView;
+import com.coupon.management.engine.CompiledCoupon;
+import com.coupon.management.engine.DiscountPlan;
+import com.coupon.management.engine.Eligibility;
+import com.coupon.management.engine.Money;
+import com.coupon.management.engine.NearMissCollector;
+import com.coupon.management.engine.RejectionReason;
+import com.coupon.management.engine.StackingSolver;
+import com.coupon.management.engine.TopKSelector;
 import com.coupon.management.entity.BxGyRule;
 import com.coupon.management.entity.Cart;
 import com.coupon.management.entity.CartItem;
 import com.coupon.management.entity.Coupon;
+import com.coupon.management.entity.CouponChange;
 import com.coupon.management.exception.CouponException;
+import com.coupon.management.metrics.CouponMetrics;
+import com.coupon.management.metrics.EvaluationTally;
 import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.usage.CouponUsageLedger;
+import com.coupon.management.usage.IdempotencyStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,7 +69,38 @@ import java.util.stream.Collectors;
 @Transactional
 public class CouponService {
 
+    private static final int BATCH_CHUNK_SIZE = 64;
+    private static final int MIN_PARALLEL_SLICE = 1024;
+
     private final CouponRepository couponRepository;
+    private final CouponCatalog couponCatalog;
+    private final CouponLookupCache couponLookupCache;
+    private final ApplicableCouponsCache applicableCouponsCache;
+    private final CouponChangeFeed couponChangeFeed;
+    private final CouponUsageLedger usageLedger;
+    private final IdempotencyStore idempotencyStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor couponEvaluationExecutor;
+    private final ForkJoinPool couponEvaluationForkJoinPool;
+    private final Validator validator;
+    private final CouponMetrics couponMetrics;
+
+    @Value("${coupon.stacking.time-budget-ms:50}")
+    private long stackingTimeBudgetMillis;
+
+    @Value("${coupon.batch.max-carts:10000}")
+    private int maxBatchCarts;
+
+    @Value("${coupon.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${coupon.page.max-size:1000}")
+    private int maxPageSize;
+
+    // Candidate count from which a single evaluation is split across the fork-join pool
+    @Value("${coupon.parallel.min-candidates:20000}")
+    private int parallelMinCandidates;
 
     //createCoupon
     public Coupon createCoupon(CouponRequest request) {
@@ -39,6 +110,15 @@ public class CouponService {
             throw new CouponException("Coupon with code " + request.getCode() + " already exists");
         }
 
+        Coupon coupon = newCoupon(request);
+        Coupon saved = couponRepository.save(coupon);
+        couponChangeFeed.append(saved.getId(), CouponChange.ChangeType.CREATED);
+        eventPublisher.publishEvent(new CouponCatalogChangedEvent(saved.getId()));
+        return saved;
+    }
+
+    // Shared with the bulk import, which validates and de-duplicates on its own
+    static Coupon newCoupon(CouponRequest request) {
         Coupon coupon = new Coupon();
         coupon.setCode(request.getCode());
         coupon.setName(request.getName());
@@ -71,25 +151,60 @@ public class CouponService {
                     .collect(Collectors.toList());
             coupon.setBxgyRules(bxgyRules);
         }
-        return couponRepository.save(coupon);
+        return coupon;
+    }
+
+    //getCoupons
+    // One keyset page: coupons with an id above afterId, read with limit + 1 rows to learn
+    // whether another page follows without a count query
+    @Transactional(readOnly = true)
+    public CouponPageResponse getCouponPage(CouponFilter filter, Long afterId, Integer limit) {
+        int pageSize = limit != null ? limit : defaultPageSize;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new CouponException("Limit must be between 1 and " + maxPageSize);
+        }
+        List<CouponResponse> coupons = couponRepository.findPage(filter, afterId, pageSize + 1);
+        boolean hasMore = coupons.size() > pageSize;
+        List<CouponResponse> page = hasMore ? coupons.subList(0, pageSize) : coupons;
+        Long nextCursor = hasMore ? page.get(page.size() - 1).getId() : null;
+        return new CouponPageResponse(page, nextCursor, hasMore);
     }
 
-    //getAllCoupons
-    public List<Coupon> getAllCoupons() {
-        return couponRepository.findAll();
+    //exportCoupons, getAllCoupons
+    @Transactional(readOnly = true)
+    public void forEachCoupon(CouponFilter filter, Consumer<CouponResponse> action) {
+        couponRepository.forEachMatching(filter, action);
+    }
+
+    //coupon-changes
+    // Live feed of coupon writes from every node; afterVersion replays what followed it first
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public SseEmitter subscribeToChanges(Long afterVersion) {
+        return couponChangeFeed.subscribe(afterVersion);
     }
 
     //getCouponById
+    // Served from the lookup cache, which loads misses in a transaction of its own
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Coupon getCouponById(Long id) {
-        return couponRepository.findById(id)
+        return couponLookupCache.findById(id)
                 .orElseThrow(() -> new CouponException("Coupon not found with id: " + id));
     }
 
+    //getCouponByCode
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Coupon getCouponByCode(String code) {
+        return couponLookupCache.findByCode(code)
+                .orElseThrow(() -> new CouponException("Coupon not found with code: " + code));
+    }
+
     //updateCouponById
     public Coupon updateCouponById(Long id, CouponRequest request) {
         log.info("Updating coupon with id: {}", id);
 
-        Coupon existingCoupon = getCouponById(id);
+        // The managed entity, not a cached copy
+        Coupon existingCoupon = couponRepository.findById(id)
+                .orElseThrow(() -> new CouponException("Coupon not found with id: " + id));
         // Check if updated coupon details are same with exisitng
         if (!existingCoupon.getCode().equals(request.getCode()) &&
                 couponRepository.existsByCode(request.getCode())) {
@@ -110,7 +225,10 @@ public class CouponService {
         existingCoupon.setApplicableProductIds(request.getApplicableProductIds());
         existingCoupon.setRepetitionLimit(request.getRepetitionLimit());
 
-        return couponRepository.save(existingCoupon);
+        Coupon saved = couponRepository.save(existingCoupon);
+        couponChangeFeed.append(id, CouponChange.ChangeType.UPDATED);
+        eventPublisher.publishEvent(new CouponCatalogChangedEvent(id));
+        return saved;
     }
 
     //deleteCouponById
@@ -121,365 +239,412 @@ public class CouponService {
             throw new CouponException("Coupon not found with id: " + id);
         }
         couponRepository.deleteById(id);
+        usageLedger.forget(id);
+        couponChangeFeed.append(id, CouponChange.ChangeType.DELETED);
+        eventPublisher.publishEvent(new CouponCatalogChangedEvent(id));
     }
 
     //applicable-coupons
-    public ApplicableCouponsResponse getApplicableCoupons(CartRequest cartRequest) {
+    // Served entirely from the in-memory catalog, so no transaction (and no connection) is needed;
+    // a cart seen before under the same catalog version is answered from the result cache.
+    // nearMisses, when given, also lists that many coupons the cart is only short of the
+    // minimum value for
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApplicableCouponsResponse getApplicableCoupons(CartRequest cartRequest, Integer limit, Integer nearMisses) {
         log.info("Finding applicable coupons for cart with {} items", cartRequest.getItems().size());
 
-        LocalDateTime currentTime = LocalDateTime.now();
-        //fetcching active coupons by currentTime
-        List<Coupon> activeCoupons = couponRepository.findActiveAndValidCoupons(currentTime);
-
-        List<CouponResponse> applicableCoupons = new ArrayList<>();
-
-        for (Coupon coupon : activeCoupons) {
-            try {
-                CouponResponse response = convertToCouponResponse(coupon);
-                BigDecimal discount = calculateDiscount(coupon, cartRequest);
-
-                if (discount.compareTo(BigDecimal.ZERO) > 0) {
-                    response.setCalculatedDiscount(discount);
-                    response.setDiscountDescription(generateDiscountDescription(coupon, discount, cartRequest));
-                    applicableCoupons.add(response);
-                }
-            } catch (Exception e) {
-                log.warn("Error calculating discount for coupon {}: {}", coupon.getCode(), e.getMessage());
-            }
+        if (limit != null && limit < 1) {
+            throw new CouponException("Limit must be at least 1");
+        }
+        if (nearMisses != null && nearMisses < 1) {
+            throw new CouponException("Near misses must be at least 1");
         }
 
-        // Sorting by highest discount amount,
-        applicableCoupons.sort((a, b) -> b.getCalculatedDiscount().compareTo(a.getCalculatedDiscount()));
-
-        return new ApplicableCouponsResponse(applicableCoupons, applicableCoupons.size());
-    }
-
-    //apply-coupon
-    public Cart applyCoupon(Long couponId, CartRequest cartRequest) {
-        log.info("Applying coupon {} to cart", couponId);
-
-        Coupon coupon = getCouponById(couponId);
-
-        // Validate coupon applicability
-        validateCouponApplicability(coupon, cartRequest);
-
-        // Create cart and apply discount
-        Cart cart = createCartFromRequest(cartRequest);
-        applyDiscountToCart(coupon, cart);
-
-        // Increment coupon usage
-        coupon.setCurrentUsage(coupon.getCurrentUsage() + 1);
-        couponRepository.save(coupon);
-
-        return cart;
-    }
-
-    private void validateCouponApplicability(Coupon coupon, CartRequest cartRequest) {
+        CatalogSnapshot snapshot = couponCatalog.snapshot();
+        CartView cart = CartView.of(cartRequest);
         LocalDateTime currentTime = LocalDateTime.now();
+        return applicableCouponsCache.get(snapshot, cart, limit, nearMisses, currentTime,
+                () -> evaluateApplicableCoupons(snapshot, cart, limit, nearMisses, currentTime, true));
+    }
 
-        if (!coupon.isActive()) {
-            throw new CouponException("Coupon is not active");
-        }
+    //applicable-coupons/batch
+    // Every cart is evaluated against the same catalog snapshot and clock reading, in
+    // chunks on the bounded evaluation pool; a failing cart only fails its own entry.
+    // The carts already keep the pool busy, so single carts are not split further
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ApplicableCouponsBatchResponse getApplicableCouponsBatch(List<CartRequest> cartRequests, Integer limit) {
+        log.info("Finding applicable coupons for a batch of {} carts", cartRequests.size());
 
-        if (coupon.getValidFrom() != null && currentTime.isBefore(coupon.getValidFrom())) {
-            throw new CouponException("Coupon is not yet valid");
+        if (cartRequests.isEmpty()) {
+            throw new CouponException("Batch must contain at least one cart");
         }
-
-        if (coupon.getValidUntil() != null && currentTime.isAfter(coupon.getValidUntil())) {
-            throw new CouponException("Coupon has expired");
+        if (cartRequests.size() > maxBatchCarts) {
+            throw new CouponException("Batch must contain at most " + maxBatchCarts + " carts");
         }
-
-        if (coupon.getMaxUsage() != null && coupon.getCurrentUsage() >= coupon.getMaxUsage()) {
-            throw new CouponException("Coupon usage limit exceeded");
+        if (limit != null && limit < 1) {
+            throw new CouponException("Limit must be at least 1");
         }
 
-        BigDecimal cartTotal = calculateCartTotal(cartRequest);
-        if (coupon.getMinimumCartValue() != null &&
-                cartTotal.compareTo(coupon.getMinimumCartValue()) < 0) {
-            throw new CouponException("Cart total does not meet minimum requirement: " +
-                    coupon.getMinimumCartValue());
+        LocalDateTime currentTime = LocalDateTime.now();
+        CatalogSnapshot snapshot = couponCatalog.snapshot();
+        ApplicableCouponsBatchResponse.CartResult[] results =
+                new ApplicableCouponsBatchResponse.CartResult[cartRequests.size()];
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < cartRequests.size(); start += BATCH_CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(start + BATCH_CHUNK_SIZE, cartRequests.size());
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    results[i] = evaluateBatchCart(i, cartRequests.get(i), snapshot, limit, currentTime);
+                }
+            }, couponEvaluationExecutor));
         }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
 
-        BigDecimal discount = calculateDiscount(coupon, cartRequest);
-        if (discount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new CouponException("Coupon cannot be applied to this cart");
+        int failed = 0;
+        for (ApplicableCouponsBatchResponse.CartResult result : results) {
+            if (result.getError() != null) {
+                failed++;
+            }
         }
+        return new ApplicableCouponsBatchResponse(Arrays.asList(results), results.length, failed);
     }
 
-    private BigDecimal calculateDiscount(Coupon coupon, CartRequest cartRequest) {
-        switch (coupon.getType()) {
-            case CART_WISE:
-                return calculateCartWiseDiscount(coupon, cartRequest);
-            case PRODUCT_WISE:
-                return calculateProductWiseDiscount(coupon, cartRequest);
-            case BXGY:
-                return calculateBxGyDiscount(coupon, cartRequest);
-            default:
-                return BigDecimal.ZERO;
+    private ApplicableCouponsBatchResponse.CartResult evaluateBatchCart(int index, CartRequest cartRequest,
+                                                                        CatalogSnapshot snapshot, Integer limit,
+                                                                        LocalDateTime currentTime) {
+        try {
+            if (cartRequest == null) {
+                return new ApplicableCouponsBatchResponse.CartResult(index, null, "Cart is required");
+            }
+            // The body is not validated as a whole, so one bad cart cannot reject the batch
+            Set<ConstraintViolation<CartRequest>> violations = validator.validate(cartRequest);
+            if (!violations.isEmpty()) {
+                String error = violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+                return new ApplicableCouponsBatchResponse.CartResult(index, null, error);
+            }
+            CartView cart = CartView.of(cartRequest);
+            ApplicableCouponsResponse response = applicableCouponsCache.get(snapshot, cart, limit, null, currentTime,
+                    () -> evaluateApplicableCoupons(snapshot, cart, limit, null, currentTime, false));
+            return new ApplicableCouponsBatchResponse.CartResult(index, response, null);
+        } catch (Exception e) {
+            log.warn("Error finding applicable coupons for cart {}: {}", index, e.getMessage());
+            return new ApplicableCouponsBatchResponse.CartResult(index, null, e.getMessage());
         }
     }
 
-    private BigDecimal calculateCartWiseDiscount(Coupon coupon, CartRequest cartRequest) {
-        BigDecimal cartTotal = calculateCartTotal(cartRequest);
-
-        if (coupon.getMinimumCartValue() != null &&
-                cartTotal.compareTo(coupon.getMinimumCartValue()) < 0) {
-            return BigDecimal.ZERO;
-        }
-
-        BigDecimal discount;
-        if (coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE) {
-            discount = cartTotal.multiply(coupon.getDiscountValue())
-                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    private ApplicableCouponsResponse evaluateApplicableCoupons(CatalogSnapshot snapshot, CartView cart,
+                                                                Integer limit, Integer nearMisses,
+                                                                LocalDateTime currentTime, boolean allowParallel) {
+        // Only coupons touching at least one product in the cart (or cart-wise ones) are evaluated
+        List<CompiledCoupon> candidates = snapshot.candidatesFor(cart.productIds());
+
+        TopKSelector selector;
+        NearMissCollector nearMissCollector = nearMisses != null ? new NearMissCollector(nearMisses) : null;
+        EvaluationTally tally = couponMetrics.newTally();
+        int parallelism = couponEvaluationForkJoinPool.getParallelism();
+        if (allowParallel && parallelism > 1 && candidates.size() >= parallelMinCandidates) {
+            int sliceSize = Math.max(MIN_PARALLEL_SLICE, candidates.size() / (parallelism * 4) + 1);
+            selector = couponEvaluationForkJoinPool.invoke(new EvaluationTask(candidates, 0, candidates.size(),
+                    sliceSize, cart, limit, currentTime, tally, nearMissCollector));
         } else {
-            discount = coupon.getDiscountValue();
+            selector = evaluateCandidates(candidates, 0, candidates.size(), cart, limit, currentTime, tally,
+                    nearMissCollector);
         }
+        couponMetrics.recordEvaluation(tally);
 
-        // Apply maximum discount limit
-        if (coupon.getMaxDiscountAmount() != null) {
-            discount = discount.min(coupon.getMaxDiscountAmount());
+        // Responses are only built for the winners, already sorted by highest discount
+        List<CouponResponse> applicableCoupons = new ArrayList<>();
+        for (TopKSelector.Scored scored : selector.results()) {
+            Coupon coupon = scored.getCoupon().getCoupon();
+            BigDecimal discount = Money.toBigDecimal(scored.getDiscount());
+            CouponResponse response = convertToCouponResponse(coupon);
+            response.setCalculatedDiscount(discount);
+            response.setDiscountDescription(generateDiscountDescription(coupon, discount, cart));
+            applicableCoupons.add(response);
+        }
+
+        List<ApplicableCouponsResponse.NearMiss> nearMissResponses = null;
+        if (nearMissCollector != null) {
+            nearMissResponses = new ArrayList<>();
+            for (NearMissCollector.NearMiss nearMiss : nearMissCollector.results()) {
+                Coupon coupon = nearMiss.getCoupon().getCoupon();
+                BigDecimal missingAmount = Money.toBigDecimal(nearMiss.getMissingAmount());
+                nearMissResponses.add(new ApplicableCouponsResponse.NearMiss(coupon.getId(), coupon.getCode(),
+                        coupon.getName(), RejectionReason.BELOW_MINIMUM, missingAmount,
+                        "Add $" + missingAmount + " to unlock " + coupon.getCode()));
+            }
         }
-
-        return discount.max(BigDecimal.ZERO);
+        return new ApplicableCouponsResponse(applicableCoupons, applicableCoupons.size(), nearMissResponses);
     }
 
-    private BigDecimal calculateProductWiseDiscount(Coupon coupon, CartRequest cartRequest) {
-        if (coupon.getApplicableProductIds() == null || coupon.getApplicableProductIds().isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        BigDecimal totalDiscount = BigDecimal.ZERO;
-
-        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
-            if (coupon.getApplicableProductIds().contains(item.getProductId())) {
-                BigDecimal itemTotal = item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
-                BigDecimal itemDiscount;
-
-                if (coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE) {
-                    itemDiscount = itemTotal.multiply(coupon.getDiscountValue())
-                            .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                } else {
-                    itemDiscount = coupon.getDiscountValue().multiply(BigDecimal.valueOf(item.getQuantity()));
+    // Ineligible coupons are skipped on the packed eligibility result, no exception is
+    // thrown; the ones only short of their minimum are handed to nearMisses when given
+    private TopKSelector evaluateCandidates(List<CompiledCoupon> candidates, int from, int to, CartView cart,
+                                            Integer limit, LocalDateTime currentTime, EvaluationTally tally,
+                                            NearMissCollector nearMisses) {
+        TopKSelector selector = new TopKSelector(limit, from);
+        EvaluationTally sliceTally = tally.slice();
+        for (int i = from; i < to; i++) {
+            CompiledCoupon compiled = candidates.get(i);
+            long eligibility = compiled.eligibility(cart, currentTime);
+            if (!Eligibility.isEligible(eligibility)) {
+                if (nearMisses != null && Eligibility.reason(eligibility) == RejectionReason.BELOW_MINIMUM) {
+                    nearMisses.offer(compiled, cart, Eligibility.missingAmount(eligibility), i);
                 }
-
-                totalDiscount = totalDiscount.add(itemDiscount);
+                continue;
             }
+            long bound = compiled.upperBound(cart);
+            if (!selector.canAdmit(bound)) {
+                continue;
+            }
+            long start = sliceTally.start();
+            long discount = compiled.isUpperBoundExact() ? bound : compiled.discount(cart);
+            sliceTally.stop(compiled.getType(), start);
+            selector.offer(compiled, discount);
         }
-
-        // Apply maximum discount limit
-        if (coupon.getMaxDiscountAmount() != null) {
-            totalDiscount = totalDiscount.min(coupon.getMaxDiscountAmount());
-        }
-
-        return totalDiscount.max(BigDecimal.ZERO);
+        tally.addAll(sliceTally);
+        return selector;
     }
 
-    private BigDecimal calculateBxGyDiscount(Coupon coupon, CartRequest cartRequest) {
-        if (coupon.getBxgyRules() == null || coupon.getBxgyRules().isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        BigDecimal totalDiscount = BigDecimal.ZERO;
-        int appliedCount = 0;
-
-        // Sort rules by priority
-        List<BxGyRule> sortedRules = coupon.getBxgyRules().stream()
-                .sorted(Comparator.comparing(BxGyRule::getPriority))
-                .collect(Collectors.toList());
-
-        for (BxGyRule rule : sortedRules) {
-            if (appliedCount >= coupon.getRepetitionLimit()) {
-                break;
-            }
-
-            BigDecimal ruleDiscount = calculateBxGyRuleDiscount(rule, cartRequest);
-            if (ruleDiscount.compareTo(BigDecimal.ZERO) > 0) {
-                totalDiscount = totalDiscount.add(ruleDiscount);
-                appliedCount++;
+    // Splits the candidates into slices evaluated on the dedicated pool; each slice keeps
+    // its own top K and the halves are merged on the way back up
+    private class EvaluationTask extends RecursiveTask<TopKSelector> {
+        private final List<CompiledCoupon> candidates;
+        private final int from;
+        private final int to;
+        private final int sliceSize;
+        private final CartView cart;
+        private final Integer limit;
+        private final LocalDateTime currentTime;
+        private final EvaluationTally tally;
+        private final NearMissCollector nearMisses;
+
+        EvaluationTask(List<CompiledCoupon> candidates, int from, int to, int sliceSize, CartView cart,
+                       Integer limit, LocalDateTime currentTime, EvaluationTally tally,
+                       NearMissCollector nearMisses) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.sliceSize = sliceSize;
+            this.cart = cart;
+            this.limit = limit;
+            this.currentTime = currentTime;
+            this.tally = tally;
+            this.nearMisses = nearMisses;
+        }
+
+        @Override
+        protected TopKSelector compute() {
+            if (to - from <= sliceSize) {
+                return evaluateCandidates(candidates, from, to, cart, limit, currentTime, tally, nearMisses);
             }
+            int middle = (from + to) >>> 1;
+            EvaluationTask left = new EvaluationTask(candidates, from, middle, sliceSize, cart, limit,
+                    currentTime, tally, nearMisses);
+            left.fork();
+            TopKSelector right = new EvaluationTask(candidates, middle, to, sliceSize, cart, limit,
+                    currentTime, tally, nearMisses).compute();
+            TopKSelector selector = left.join();
+            selector.merge(right);
+            return selector;
         }
-
-        return totalDiscount;
     }
 
-    private BigDecimal calculateBxGyRuleDiscount(BxGyRule rule, CartRequest cartRequest) {
-        // Count buy products
-        int buyProductCount = 0;
-        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
-            if (rule.getBuyProductIds().contains(item.getProductId())) {
-                buyProductCount += item.getQuantity();
-            }
-        }
+    //best-combination
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CouponCombinationResponse findBestCombination(CouponCombinationRequest request) {
+        log.info("Finding best coupon combination for cart with {} items", request.getItems().size());
 
-        // Calculate number of times the rule can be applied
-        int applicableTimes = buyProductCount / rule.getBuyQuantity();
+        LocalDateTime currentTime = LocalDateTime.now();
+        CartView cart = CartView.of(new CartRequest(request.getItems()));
 
-        if (applicableTimes == 0) {
-            return BigDecimal.ZERO;
+        List<StackingSolver.Candidate> candidates = new ArrayList<>();
+        EvaluationTally tally = couponMetrics.newTally();
+        for (CompiledCoupon compiled : couponCatalog.snapshot().candidatesFor(cart.productIds())) {
+            if (!Eligibility.isEligible(compiled.eligibility(cart, currentTime))) {
+                continue;
+            }
+            // The plan, not just the total, so the solver can cap overlapping discounts per line
+            long start = tally.start();
+            DiscountPlan plan = compiled.plan(cart);
+            tally.stop(compiled.getType(), start);
+            if (plan.isApplicable()) {
+                candidates.add(new StackingSolver.Candidate(compiled, plan));
+            }
         }
+        couponMetrics.recordEvaluation(tally);
+        candidates.sort((a, b) -> Long.compare(b.getDiscount(), a.getDiscount()));
 
-        // Calculate total value of get products that would be free
-        BigDecimal getProductValue = BigDecimal.ZERO;
-        for (CartRequest.CartItemRequest item : cartRequest.getItems()) {
-            if (rule.getGetProductIds().contains(item.getProductId())) {
-                getProductValue = getProductValue.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        Map<Long, Long> groupMasks = new HashMap<>();
+        if (request.getExclusiveGroups() != null) {
+            for (int group = 0; group < request.getExclusiveGroups().size(); group++) {
+                for (Long couponId : request.getExclusiveGroups().get(group)) {
+                    groupMasks.merge(couponId, 1L << group, (a, b) -> a | b);
+                }
             }
         }
-
-        // Calculate discount based on applicable times and get product quantity
-        int totalGetQuantity = applicableTimes * rule.getGetQuantity();
-        BigDecimal averageGetProductPrice = getProductValue.divide(BigDecimal.valueOf(rule.getGetProductIds().size()), 2, RoundingMode.HALF_UP);
-
-        return averageGetProductPrice.multiply(BigDecimal.valueOf(totalGetQuantity));
+        int maxCoupons = request.getMaxCoupons() != null ? request.getMaxCoupons() : candidates.size();
+        long budgetMillis = request.getTimeBudgetMillis() != null ? request.getTimeBudgetMillis() : stackingTimeBudgetMillis;
+
+        StackingSolver.Result result = new StackingSolver(candidates, cart, maxCoupons, groupMasks,
+                budgetMillis * 1_000_000L).solve();
+        log.debug("Searched {} combinations of {} coupons, optimal: {}",
+                result.getNodesExplored(), candidates.size(), result.isOptimal());
+
+        List<CouponResponse> coupons = new ArrayList<>();
+        for (StackingSolver.Applied applied : result.getApplied()) {
+            Coupon coupon = applied.getCoupon().getCoupon();
+            BigDecimal discount = Money.toBigDecimal(applied.getDiscount());
+            CouponResponse response = convertToCouponResponse(coupon);
+            response.setCalculatedDiscount(discount);
+            response.setDiscountDescription(generateDiscountDescription(coupon, discount, cart));
+            coupons.add(response);
+        }
+        return new CouponCombinationResponse(coupons, Money.toBigDecimal(cart.total()),
+                Money.toBigDecimal(result.getTotalDiscount()),
+                Money.toBigDecimal(cart.total() - result.getTotalDiscount()), result.isOptimal());
     }
 
-    private BigDecimal calculateCartTotal(CartRequest cartRequest) {
-        return cartRequest.getItems().stream()
-                .map(item -> item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    //apply-coupon with Idempotency-Key
+    // A repeated key returns the stored response without validating, computing or counting
+    // usage again; without a key every call applies the coupon
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public IdempotencyStore.Outcome<CartResponse> applyCoupon(Long couponId, CartRequest cartRequest,
+                                                              String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return IdempotencyStore.Outcome.of(CartResponse.fromCart(applyCoupon(couponId, cartRequest)));
+        }
+        return idempotencyStore.execute(idempotencyKey, Arrays.asList(couponId, cartRequest),
+                () -> CartResponse.fromCart(applyCoupon(couponId, cartRequest)));
     }
 
-    private Cart createCartFromRequest(CartRequest cartRequest) {
-        Cart cart = new Cart();
-        List<CartItem> cartItems = new ArrayList<>();
-
-        for (CartRequest.CartItemRequest itemRequest : cartRequest.getItems()) {
-            CartItem cartItem = new CartItem();
-            cartItem.setCart(cart);
-            cartItem.setProductId(itemRequest.getProductId());
-            cartItem.setProductName(itemRequest.getProductName());
-            cartItem.setQuantity(itemRequest.getQuantity());
-            cartItem.setPrice(itemRequest.getPrice());
-            cartItem.setDiscount(BigDecimal.ZERO);
-            cartItem.setTotalDiscount(BigDecimal.ZERO);
-            cartItem.calculateFinalPrice();
-            cartItems.add(cartItem);
-        }
-        cart.setItems(cartItems);
-        cart.calculateTotals();
-        return cart;
-    }
+    //apply-coupon
+    // Usage is counted by the ledger and the coupon comes from the lookup cache, so no
+    // transaction is needed unless the cache has to load it
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Cart applyCoupon(Long couponId, CartRequest cartRequest) {
+        log.info("Applying coupon {} to cart", couponId);
 
-    private void applyDiscountToCart(Coupon coupon, Cart cart) {
-        BigDecimal totalDiscount = BigDecimal.ZERO;
+        Coupon coupon = getCouponById(couponId);
 
-        switch (coupon.getType()) {
-            case CART_WISE:
-                totalDiscount = applyCartWiseDiscount(coupon, cart);
-                break;
-            case PRODUCT_WISE:
-                totalDiscount = applyProductWiseDiscount(coupon, cart);
-                break;
-            case BXGY:
-                totalDiscount = applyBxGyDiscount(coupon, cart);
-                break;
+        // One evaluation drives both the validation and the discounted cart
+        CartView cartView = CartView.of(cartRequest);
+        DiscountPlan plan;
+        try {
+            plan = validateCouponApplicability(coupon, cartView);
+        } catch (CouponException e) {
+            couponMetrics.couponRejected(coupon.getType());
+            throw e;
         }
-
-        cart.setTotalDiscount(totalDiscount);
+        Cart cart = createCart(cartRequest, cartView, plan);
         cart.setAppliedCoupon(coupon);
-        cart.calculateTotals();
-    }
 
-    private BigDecimal applyCartWiseDiscount(Coupon coupon, Cart cart) {
-        BigDecimal discount;
-        if (coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE) {
-            discount = cart.getTotalPrice().multiply(coupon.getDiscountValue())
-                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-        } else {
-            discount = coupon.getDiscountValue();
+        // Increment coupon usage, atomically and only while below maxUsage
+        int usage = usageLedger.tryAcquire(couponId, coupon.getCurrentUsage(), coupon.getMaxUsage());
+        if (usage == CouponUsageLedger.LIMIT_REACHED) {
+            couponMetrics.couponRejected(coupon.getType());
+            // This node still took the coupon for available, so other nodes may as well
+            usageExhausted(couponId);
+            throw new CouponException("Coupon usage limit exceeded");
         }
+        coupon.setCurrentUsage(usage);
+        couponMetrics.couponApplied(coupon.getType());
 
-        if (coupon.getMaxDiscountAmount() != null) {
-            discount = discount.min(coupon.getMaxDiscountAmount());
+        // The catalogs only have to drop coupons whose usage just ran out
+        if (coupon.getMaxUsage() != null && usage >= coupon.getMaxUsage()) {
+            usageExhausted(couponId);
         }
 
-        return discount.max(BigDecimal.ZERO);
+        return cart;
     }
 
-    private BigDecimal applyProductWiseDiscount(Coupon coupon, Cart cart) {
-        if (coupon.getApplicableProductIds() == null || coupon.getApplicableProductIds().isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        BigDecimal totalDiscount = BigDecimal.ZERO;
-
-        for (CartItem item : cart.getItems()) {
-            if (coupon.getApplicableProductIds().contains(item.getProductId())) {
-                BigDecimal itemDiscount;
-
-                if (coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE) {
-                    itemDiscount = item.getPrice().multiply(coupon.getDiscountValue())
-                            .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                } else {
-                    itemDiscount = coupon.getDiscountValue();
-                }
-
-                item.setDiscount(itemDiscount);
-                item.calculateFinalPrice();
-                totalDiscount = totalDiscount.add(itemDiscount.multiply(BigDecimal.valueOf(item.getQuantity())));
-            }
-        }
-
-        if (coupon.getMaxDiscountAmount() != null) {
-            totalDiscount = totalDiscount.min(coupon.getMaxDiscountAmount());
-        }
-
-        return totalDiscount.max(BigDecimal.ZERO);
+    // Recorded in the change outbox like any other write, in a short transaction of its
+    // own, so every node reloads the coupon; this node follows the event after the commit
+    private void usageExhausted(Long couponId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            couponChangeFeed.append(couponId, CouponChange.ChangeType.UPDATED);
+            eventPublisher.publishEvent(new CouponCatalogChangedEvent(couponId));
+        });
     }
 
-    private BigDecimal applyBxGyDiscount(Coupon coupon, Cart cart) {
-        if (coupon.getBxgyRules() == null || coupon.getBxgyRules().isEmpty()) {
-            return BigDecimal.ZERO;
+    // The same eligibility check and evaluation as applicable-coupons; only here, where the
+    // shopper asked for this one coupon, is a rejection turned into an error
+    private DiscountPlan validateCouponApplicability(Coupon coupon, CartView cart) {
+        CompiledCoupon compiled = CompiledCoupon.compile(coupon);
+        long eligibility = compiled.eligibility(cart, LocalDateTime.now());
+        if (!Eligibility.isEligible(eligibility)) {
+            throw new CouponException(rejectionMessage(coupon, Eligibility.reason(eligibility)));
         }
-
-        BigDecimal totalDiscount = BigDecimal.ZERO;
-        int appliedCount = 0;
-
-        List<BxGyRule> sortedRules = coupon.getBxgyRules().stream()
-                 .sorted(Comparator.comparing(BxGyRule::getPriority))
-                 .collect(Collectors.toList());
-
-        for (BxGyRule rule : sortedRules) {
-            if (appliedCount >= coupon.getRepetitionLimit()) {
-                break;
-            }
-
-            BigDecimal ruleDiscount = applyBxGyRuleDiscount(rule, cart);
-            if (ruleDiscount.compareTo(BigDecimal.ZERO) > 0) {
-                totalDiscount = totalDiscount.add(ruleDiscount);
-                appliedCount++;
-            }
+        DiscountPlan plan = compiled.plan(cart);
+        if (!plan.isApplicable()) {
+            throw new CouponException(rejectionMessage(coupon, RejectionReason.NO_MATCHING_PRODUCTS));
         }
-
-        return totalDiscount;
+        return plan;
     }
 
-    private BigDecimal applyBxGyRuleDiscount(BxGyRule rule, Cart cart) {
-
-        int buyProductCount = 0;
-        for (CartItem item : cart.getItems()) {
-            if (rule.getBuyProductIds().contains(item.getProductId())) {
-                buyProductCount += item.getQuantity();
-            }
+    private static String rejectionMessage(Coupon coupon, RejectionReason reason) {
+        switch (reason) {
+            case NOT_ACTIVE:
+                return "Coupon is not active";
+            case NOT_YET_VALID:
+                return "Coupon is not yet valid";
+            case EXPIRED:
+                return "Coupon has expired";
+            case USAGE_EXHAUSTED:
+                return "Coupon usage limit exceeded";
+            case BELOW_MINIMUM:
+                return "Cart total does not meet minimum requirement: " + coupon.getMinimumCartValue();
+            default:
+                return "Coupon cannot be applied to this cart";
         }
+    }
 
-        int applicableTimes = buyProductCount / rule.getBuyQuantity();
-
-        if (applicableTimes == 0) {
-            return BigDecimal.ZERO;
-        }
+    // Items keep the request's lines; a plan line shared by several items of the same
+    // product is split between them in proportion to what each costs
+    private Cart createCart(CartRequest cartRequest, CartView cartView, DiscountPlan plan) {
+        Cart cart = new Cart();
+        List<CartRequest.CartItemRequest> itemRequests = cartRequest.getItems();
+        int[] itemsLeft = new int[cartView.size()];
+        for (CartRequest.CartItemRequest itemRequest : itemRequests) {
+            itemsLeft[cartView.indexOf(itemRequest.getProductId())]++;
+        }
+        long[] discountLeft = new long[cartView.size()];
+        long[] totalLeft = new long[cartView.size()];
+        for (int line = 0; line < cartView.size(); line++) {
+            discountLeft[line] = plan.lineDiscount(line);
+            totalLeft[line] = cartView.lineTotal(line);
+        }
+
+        List<CartItem> cartItems = new ArrayList<>(itemRequests.size());
+        for (CartRequest.CartItemRequest itemRequest : itemRequests) {
+            int line = cartView.indexOf(itemRequest.getProductId());
+            long itemTotal = Money.times(Money.toCents(itemRequest.getPrice()), itemRequest.getQuantity());
+            long itemDiscount = --itemsLeft[line] == 0 ? discountLeft[line]
+                    : Money.divideHalfUp(Money.times(discountLeft[line], itemTotal), totalLeft[line]);
+            discountLeft[line] -= itemDiscount;
+            totalLeft[line] -= itemTotal;
 
-        BigDecimal getProductValue = BigDecimal.ZERO;
-        for (CartItem item : cart.getItems()) {
-            if (rule.getGetProductIds().contains(item.getProductId())) {
-                getProductValue = getProductValue.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
-            }
+            CartItem cartItem = new CartItem();
+            cartItem.setCart(cart);
+            cartItem.setProductId(itemRequest.getProductId());
+            cartItem.setProductName(itemRequest.getProductName());
+            cartItem.setQuantity(itemRequest.getQuantity());
+            cartItem.setPrice(itemRequest.getPrice());
+            // Per-unit figure for display; the total is the exact share of the plan
+            cartItem.setDiscount(Money.toBigDecimal(Money.divideHalfUp(itemDiscount, itemRequest.getQuantity())));
+            cartItem.setTotalDiscount(Money.toBigDecimal(itemDiscount));
+            cartItem.setFinalPrice(Money.toBigDecimal(itemTotal - itemDiscount));
+            cartItems.add(cartItem);
         }
-
-        int totalGetQuantity = applicableTimes * rule.getGetQuantity();
-        BigDecimal averageGetProductPrice = getProductValue.divide(BigDecimal.valueOf(rule.getGetProductIds().size()), 2, RoundingMode.HALF_UP);
-
-        return averageGetProductPrice.multiply(BigDecimal.valueOf(totalGetQuantity));
+        cart.setItems(cartItems);
+        cart.setTotalDiscount(Money.toBigDecimal(plan.total()));
+        cart.calculateTotals();
+        return cart;
     }
 
     private CouponResponse convertToCouponResponse(Coupon coupon) {
@@ -504,13 +669,13 @@ public class CouponService {
         return response;
     }
 
-    private String generateDiscountDescription(Coupon coupon, BigDecimal discount, CartRequest cartRequest) {
+    private String generateDiscountDescription(Coupon coupon, BigDecimal discount, CartView cart) {
         switch (coupon.getType()) {
             case CART_WISE:
                 return String.format("%s off on cart total of %s",
                         coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE ?
                                 coupon.getDiscountValue() + "%" : "$" + coupon.getDiscountValue(),
-                        calculateCartTotal(cartRequest));
+                        Money.toBigDecimal(cart.total()));
             case PRODUCT_WISE:
                 return String.format("%s off on applicable products",
                         coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE ?
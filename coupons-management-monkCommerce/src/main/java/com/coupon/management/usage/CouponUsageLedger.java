@@ -0,0 +1,166 @@
+package com.coupon.management.usage;
+
+import com.coupon.management.repository.CouponRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Coupon usage is reserved in the database before a redemption is accepted, so every
+// instance sharing the table stays under maxUsage and a crash loses no accepted
+// redemption. Reservations come in leases of up to coupon.usage.lease-size usages,
+// taken with a conditional UPDATE that only succeeds while the lease still fits under
+// maxUsage. Redemptions inside a lease are a compare-and-set on one AtomicLong and
+// never touch the coupon row. Unused lease usages are handed back on shutdown; a
+// crash leaves them counted, which can only under-redeem the coupon.
+@Component
+@Slf4j
+public class CouponUsageLedger {
+
+    public static final int LIMIT_REACHED = -1;
+
+    private final CouponRepository couponRepository;
+    private final TransactionTemplate leaseTransaction;
+    private final int leaseSize;
+    private final ConcurrentHashMap<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    public CouponUsageLedger(CouponRepository couponRepository, PlatformTransactionManager transactionManager,
+                             @Value("${coupon.usage.lease-size:10}") int leaseSize) {
+        this.couponRepository = couponRepository;
+        this.leaseTransaction = new TransactionTemplate(transactionManager);
+        this.leaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.leaseSize = Math.max(1, leaseSize);
+    }
+
+    // Usage as this instance knows it: the table count, less the leased usages it has
+    // not handed out yet. persistedUsage is used until the coupon's first lease
+    public int currentUsage(Long couponId, Integer persistedUsage) {
+        int persisted = persistedUsage != null ? persistedUsage : 0;
+        Lease lease = leases.get(couponId);
+        if (lease == null) {
+            return persisted;
+        }
+        long range = lease.range.get();
+        return Math.max(persisted, lastUsage(range)) - unused(range);
+    }
+
+    // Returns the coupon's usage count including this redemption, or LIMIT_REACHED when
+    // maxUsage is already used up across all instances
+    public int tryAcquire(Long couponId, Integer persistedUsage, Integer maxUsage) {
+        Lease lease = leases.computeIfAbsent(couponId, id -> new Lease());
+        int usage = lease.take();
+        if (usage != LIMIT_REACHED) {
+            return usage;
+        }
+        synchronized (lease) {
+            // Another thread may have renewed the lease while this one waited
+            usage = lease.take();
+            if (usage != LIMIT_REACHED) {
+                return usage;
+            }
+            int known = Math.max(persistedUsage != null ? persistedUsage : 0, lastUsage(lease.range.get()));
+            Long reserved = reserve(couponId, leaseSizeFor(known, maxUsage));
+            if (reserved == null) {
+                return LIMIT_REACHED;
+            }
+            return lease.renew(reserved);
+        }
+    }
+
+    public void forget(Long couponId) {
+        leases.remove(couponId);
+    }
+
+    @PreDestroy
+    public void releaseUnused() {
+        for (Map.Entry<Long, Lease> entry : leases.entrySet()) {
+            int unused = entry.getValue().drain();
+            if (unused > 0) {
+                try {
+                    leaseTransaction.execute(status -> couponRepository.incrementUsage(entry.getKey(), -unused));
+                } catch (RuntimeException e) {
+                    log.warn("Could not release {} leased usages of coupon {}: {}",
+                            unused, entry.getKey(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Near the limit leases shrink, so one instance cannot hold back what is left from the others
+    private int leaseSizeFor(int knownUsage, Integer maxUsage) {
+        if (maxUsage == null) {
+            return leaseSize;
+        }
+        return Math.max(1, Math.min(leaseSize, (maxUsage - knownUsage) / 4));
+    }
+
+    // The reserved usage numbers as a packed range, or null when not even one fits. The
+    // row stays locked by the UPDATE, so the count read after it ends this lease
+    private Long reserve(Long couponId, int delta) {
+        return leaseTransaction.execute(status -> {
+            int size = couponRepository.reserveUsage(couponId, delta) == 1 ? delta
+                    : delta > 1 && couponRepository.reserveUsage(couponId, 1) == 1 ? 1 : 0;
+            if (size == 0) {
+                return null;
+            }
+            int end = couponRepository.findCurrentUsage(couponId);
+            return range(end - size + 1, end);
+        });
+    }
+
+    private static int nextUsage(long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int lastUsage(long range) {
+        return (int) range;
+    }
+
+    private static int unused(long range) {
+        return Math.max(0, lastUsage(range) - nextUsage(range) + 1);
+    }
+
+    private static long range(int next, int last) {
+        return ((long) next << 32) | (last & 0xFFFFFFFFL);
+    }
+
+    // The usage numbers this instance may still hand out, first to last, packed into one long
+    private static final class Lease {
+        private final AtomicLong range = new AtomicLong(range(1, 0));
+
+        int take() {
+            while (true) {
+                long current = range.get();
+                int next = nextUsage(current);
+                if (next > lastUsage(current)) {
+                    return LIMIT_REACHED;
+                }
+                if (range.compareAndSet(current, range(next + 1, lastUsage(current)))) {
+                    return next;
+                }
+            }
+        }
+
+        // Only called with the previous lease used up; the first usage of the new one is taken
+        int renew(long reserved) {
+            range.set(range(nextUsage(reserved) + 1, lastUsage(reserved)));
+            return nextUsage(reserved);
+        }
+
+        int drain() {
+            while (true) {
+                long current = range.get();
+                if (range.compareAndSet(current, range(lastUsage(current) + 1, lastUsage(current)))) {
+                    return unused(current);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.coupon.management.usage;
+
+import com.coupon.management.exception.CouponException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Results of requests sent with an Idempotency-Key, so a retried checkout gets the first
+// answer back instead of using the coupon again. The first request for a key runs; any
+// duplicate arriving meanwhile waits for it and shares its result. Failures are not kept,
+// a failed apply used nothing and may be retried for real.
+@Component
+public class IdempotencyStore {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, Entry> entries;
+
+    public IdempotencyStore(MeterRegistry registry,
+                            @Value("${coupon.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${coupon.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        // Hits are replayed or coalesced requests
+        CaffeineCacheMetrics.monitor(registry, entries, "coupon.idempotency");
+    }
+
+    // fingerprint identifies the request; reusing a key for a different request is an error
+    @SuppressWarnings("unchecked")
+    public <T> Outcome<T> execute(String key, Object fingerprint, Supplier<T> action) {
+        if (key.trim().isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new CouponException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        Entry created = new Entry(fingerprint);
+        Entry entry = entries.get(key, k -> created);
+        if (!entry.fingerprint.equals(fingerprint)) {
+            throw new CouponException("Idempotency-Key " + key + " was already used for a different request");
+        }
+        if (entry != created) {
+            try {
+                return new Outcome<>((T) entry.result.join(), true);
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        // Anything thrown must complete the entry, or duplicates would wait on it forever
+        try {
+            T value = action.get();
+            entry.result.complete(value);
+            return new Outcome<>(value, false);
+        } catch (Throwable e) {
+            entries.asMap().remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // The first request's failure, rethrown as is to the duplicates; a checked cause
+    // stays wrapped in the CompletionException
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : e;
+    }
+
+    @Getter
+    public static final class Outcome<T> {
+        private final T value;
+        // True when value was produced by an earlier request with the same key
+        private final boolean replayed;
+
+        private Outcome(T value, boolean replayed) {
+            this.value = value;
+            this.replayed = replayed;
+        }
+
+        // A result computed without going through the store
+        public static <T> Outcome<T> of(T value) {
+            return new Outcome<>(value, false);
+        }
+    }
+
+    private static final class Entry {
+        private final Object fingerprint;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Entry(Object fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
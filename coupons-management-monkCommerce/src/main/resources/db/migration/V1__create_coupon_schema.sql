@@ -0,0 +1,90 @@
+-- Schema for the prod profile; the default profile still lets Hibernate create-drop it.
+-- Keep in step with the entities, the prod profile validates the mapping against it.
+
+CREATE TABLE coupons (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    code                VARCHAR(255)   NOT NULL,
+    name                VARCHAR(255),
+    description         VARCHAR(1000),
+    type                VARCHAR(255)   NOT NULL,
+    discount_value      NUMERIC(19, 2) NOT NULL,
+    discount_type       VARCHAR(255)   NOT NULL,
+    active              BOOLEAN        NOT NULL,
+    valid_from          TIMESTAMP,
+    valid_until         TIMESTAMP,
+    minimum_cart_value  NUMERIC(19, 2) CHECK (minimum_cart_value >= 0),
+    max_usage           INTEGER CHECK (max_usage >= 1),
+    current_usage       INTEGER CHECK (current_usage >= 0),
+    max_discount_amount NUMERIC(19, 2) CHECK (max_discount_amount >= 1),
+    repetition_limit    INTEGER CHECK (repetition_limit >= 1),
+    created_at          TIMESTAMP,
+    updated_at          TIMESTAMP,
+    CONSTRAINT uk_coupons_code UNIQUE (code)
+);
+
+-- findActiveAndValidCouponsByType / findActiveAndValidCoupons
+CREATE INDEX idx_coupons_active_type_validity ON coupons (active, type, valid_from, valid_until);
+-- Catalog load: active coupons that have not expired
+CREATE INDEX idx_coupons_active_valid_until ON coupons (active, valid_until);
+
+CREATE TABLE coupon_applicable_products (
+    coupon_id  BIGINT NOT NULL,
+    product_id BIGINT,
+    CONSTRAINT fk_coupon_applicable_products_coupon FOREIGN KEY (coupon_id) REFERENCES coupons (id)
+);
+
+CREATE INDEX idx_coupon_applicable_products_coupon ON coupon_applicable_products (coupon_id);
+CREATE INDEX idx_coupon_applicable_products_product ON coupon_applicable_products (product_id, coupon_id);
+
+CREATE TABLE bxgy_rules (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    coupon_id    BIGINT  NOT NULL,
+    buy_quantity INTEGER NOT NULL CHECK (buy_quantity >= 1),
+    get_quantity INTEGER NOT NULL CHECK (get_quantity >= 1),
+    priority     INTEGER NOT NULL CHECK (priority >= 1),
+    CONSTRAINT fk_bxgy_rules_coupon FOREIGN KEY (coupon_id) REFERENCES coupons (id)
+);
+
+CREATE INDEX idx_bxgy_rules_coupon ON bxgy_rules (coupon_id);
+
+CREATE TABLE bxgy_buy_products (
+    rule_id    BIGINT NOT NULL,
+    product_id BIGINT,
+    CONSTRAINT fk_bxgy_buy_products_rule FOREIGN KEY (rule_id) REFERENCES bxgy_rules (id)
+);
+
+CREATE INDEX idx_bxgy_buy_products_rule ON bxgy_buy_products (rule_id);
+CREATE INDEX idx_bxgy_buy_products_product ON bxgy_buy_products (product_id, rule_id);
+
+CREATE TABLE bxgy_get_products (
+    rule_id    BIGINT NOT NULL,
+    product_id BIGINT,
+    CONSTRAINT fk_bxgy_get_products_rule FOREIGN KEY (rule_id) REFERENCES bxgy_rules (id)
+);
+
+CREATE INDEX idx_bxgy_get_products_rule ON bxgy_get_products (rule_id);
+CREATE INDEX idx_bxgy_get_products_product ON bxgy_get_products (product_id, rule_id);
+
+CREATE TABLE carts (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    total_price       NUMERIC(19, 2) NOT NULL,
+    total_discount    NUMERIC(19, 2) NOT NULL,
+    final_price       NUMERIC(19, 2) NOT NULL,
+    applied_coupon_id BIGINT,
+    created_at        TIMESTAMP,
+    updated_at        TIMESTAMP,
+    CONSTRAINT fk_carts_applied_coupon FOREIGN KEY (applied_coupon_id) REFERENCES coupons (id)
+);
+
+CREATE TABLE cart_items (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    cart_id        BIGINT         NOT NULL,
+    product_id     BIGINT         NOT NULL,
+    product_name   VARCHAR(255),
+    quantity       INTEGER        NOT NULL CHECK (quantity >= 1),
+    price          NUMERIC(19, 2) NOT NULL,
+    discount       NUMERIC(19, 2) NOT NULL,
+    total_discount NUMERIC(19, 2) NOT NULL,
+    final_price    NUMERIC(19, 2) NOT NULL,
+    CONSTRAINT fk_cart_items_cart FOREIGN KEY (cart_id) REFERENCES carts (id)
+);
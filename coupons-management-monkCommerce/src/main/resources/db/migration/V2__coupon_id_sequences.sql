@@ -0,0 +1,9 @@
+-- Coupons and BxGy rules take their ids from pooled sequences so inserts can be batched.
+-- The increment must match allocationSize on the entities; the restart value leaves the
+-- first block Hibernate hands out just above the ids already in use.
+
+CREATE SEQUENCE coupons_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE coupons_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM coupons);
+
+CREATE SEQUENCE bxgy_rules_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE bxgy_rules_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM bxgy_rules);
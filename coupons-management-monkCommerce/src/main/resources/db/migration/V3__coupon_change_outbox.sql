@@ -0,0 +1,14 @@
+-- Outbox of coupon writes, appended in the writing transaction. Every node tails it to
+-- keep its in-memory catalog and lookup cache in step with writes made on other nodes.
+-- Rows carry no foreign key so the change log outlives deleted coupons.
+
+CREATE TABLE coupon_changes (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    coupon_id   BIGINT,
+    change_type VARCHAR(255) NOT NULL,
+    node_id     VARCHAR(255) NOT NULL,
+    changed_at  TIMESTAMP    NOT NULL
+);
+
+-- Retention purge
+CREATE INDEX idx_coupon_changes_changed_at ON coupon_changes (changed_at);
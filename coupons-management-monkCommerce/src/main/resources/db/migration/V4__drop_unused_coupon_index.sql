@@ -0,0 +1,4 @@
+-- No query filters coupons on (active, type, valid_from, valid_until) any more; the
+-- catalog load uses idx_coupons_active_valid_until and the rest go by id, code or product.
+
+DROP INDEX IF EXISTS idx_coupons_active_type_validity;
@@ -0,0 +1,149 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.usage.CouponUsageLedger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CouponCatalogTest {
+
+    private final List<Coupon> coupons = new CopyOnWriteArrayList<>();
+    // Repository method and the thread it ran on, for every query the catalog made
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch reloadGate = new CountDownLatch(0);
+
+    private CouponCatalog catalog;
+
+    @AfterEach
+    void stopCatalog() {
+        if (catalog != null) {
+            catalog.stop();
+        }
+    }
+
+    @Test
+    void singleCouponChangeReloadsOnlyThatCouponOffTheCallersThread() throws Exception {
+        coupons.add(coupon(1L, "TEN"));
+        catalog = catalog();
+        catalog.refresh();
+        queries.clear();
+
+        reloadGate = new CountDownLatch(1);
+        coupons.add(coupon(2L, "TWENTY"));
+        // Returns while the reload is still held back, so it cannot have run on this thread
+        catalog.onCouponsChanged(new CouponCatalogChangedEvent(2L));
+        assertThat(catalog.snapshot().size()).isEqualTo(1);
+        reloadGate.countDown();
+
+        awaitSize(2);
+        assertThat(queries).containsExactly("findAllById on coupon-catalog-1");
+    }
+
+    @Test
+    void bulkChangeRebuildsTheCatalog() throws Exception {
+        catalog = catalog();
+        catalog.refresh();
+        queries.clear();
+
+        coupons.add(coupon(1L, "TEN"));
+        coupons.add(coupon(2L, "TWENTY"));
+        catalog.onCouponsChanged(new CouponCatalogChangedEvent(null));
+
+        awaitSize(2);
+        assertThat(queries).allMatch(query -> query.startsWith("findByActiveTrue")
+                && query.endsWith("on coupon-catalog-1"));
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (catalog.snapshot().size() != size) {
+            assertThat(System.currentTimeMillis()).as("waited for the catalog update").isLessThan(deadline);
+            Thread.sleep(5L);
+        }
+    }
+
+    private CouponCatalog catalog() {
+        CouponRepository repository = repository();
+        PlatformTransactionManager transactionManager = new NoTransactionManager();
+        return new CouponCatalog(repository, new CouponUsageLedger(repository, transactionManager, 10),
+                transactionManager);
+    }
+
+    // Serves the queries the catalog makes from the coupons list
+    private CouponRepository repository() {
+        return (CouponRepository) Proxy.newProxyInstance(CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class}, (proxy, method, args) -> {
+                    queries.add(method.getName() + " on " + Thread.currentThread().getName());
+                    switch (method.getName()) {
+                        case "findByActiveTrueAndValidUntilIsNull":
+                            return new ArrayList<>(coupons);
+                        case "findByActiveTrueAndValidUntilGreaterThanEqual":
+                            return Collections.emptyList();
+                        case "findAllById":
+                            reloadGate.await(10, TimeUnit.SECONDS);
+                            List<Coupon> found = new ArrayList<>();
+                            for (Coupon coupon : coupons) {
+                                if (contains((Iterable<?>) args[0], coupon.getId())) {
+                                    found.add(coupon);
+                                }
+                            }
+                            return found;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static boolean contains(Iterable<?> ids, Long id) {
+        for (Object candidate : ids) {
+            if (id.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Coupon coupon(Long id, String code) {
+        Coupon coupon = new Coupon();
+        coupon.setId(id);
+        coupon.setCode(code);
+        coupon.setName(code);
+        coupon.setDescription("Catalog test coupon");
+        coupon.setType(Coupon.CouponType.CART_WISE);
+        coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+        coupon.setDiscountValue(BigDecimal.TEN);
+        return coupon;
+    }
+
+    private static final class NoTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.CouponManagementStart;
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.dto.CouponRequest;
+import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.engine.CompiledCoupon;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.exception.CouponException;
+import com.coupon.management.repository.CouponRepository;
+import com.coupon.management.service.CouponService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Two application contexts on one database stand in for two instances; each only learns
+// about the other's writes through the coupon_changes outbox
+class CouponChangeFeedTest {
+
+    private static final String DATABASE_URL = "jdbc:h2:mem:change-feed-test;DB_CLOSE_DELAY=-1";
+    private static final long TIMEOUT_MILLIS = 10_000L;
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode("a", "create");
+        // The second node must not drop the schema the first one created
+        nodeB = startNode("b", "none");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    void couponCreatedOnOneNodeReachesTheOtherNodesCatalog() {
+        CartRequest cart = cart();
+        // Leaves an answer without the new coupon in node b's result cache
+        assertThat(applicableCodes(nodeB, cart)).doesNotContain("FEED10");
+
+        Long couponId = service(nodeA).createCoupon(couponRequest("FEED10")).getId();
+
+        awaitTrue(() -> catalogIds(nodeB).contains(couponId));
+        assertThat(applicableCodes(nodeB, cart)).contains("FEED10");
+        assertThat(service(nodeB).getCouponById(couponId).getCode()).isEqualTo("FEED10");
+    }
+
+    @Test
+    void couponDeletedOnOneNodeLeavesTheOtherNodesCatalog() {
+        Long couponId = service(nodeA).createCoupon(couponRequest("FEED20")).getId();
+        awaitTrue(() -> catalogIds(nodeB).contains(couponId));
+
+        service(nodeB).deleteCouponById(couponId);
+
+        awaitTrue(() -> !catalogIds(nodeA).contains(couponId));
+        assertThat(applicableCodes(nodeA, cart())).doesNotContain("FEED20");
+    }
+
+    @Test
+    void couponUsedUpOnOneNodeStopsApplyingOnTheOther() {
+        CouponRequest request = couponRequest("FEED30");
+        request.setMaxUsage(1);
+        Long couponId = service(nodeA).createCoupon(request).getId();
+        awaitTrue(() -> applicableCodes(nodeB, cart()).contains("FEED30"));
+
+        service(nodeA).applyCoupon(couponId, cart());
+
+        awaitTrue(() -> !applicableCodes(nodeB, cart()).contains("FEED30"));
+        assertThat(applicableCodes(nodeA, cart())).doesNotContain("FEED30");
+    }
+
+    // The node that finds the limit already reached in the table still shares what it learned
+    @Test
+    void limitReachedOnOneNodeStopsApplyingEverywhere() {
+        CouponRequest request = couponRequest("FEED40");
+        request.setMaxUsage(3);
+        Long couponId = service(nodeA).createCoupon(request).getId();
+        service(nodeA).applyCoupon(couponId, cart());
+        awaitTrue(() -> applicableCodes(nodeB, cart()).contains("FEED40"));
+
+        // Used up behind both nodes' backs, as by a node that crashed before telling anyone
+        nodeA.getBean(TransactionTemplate.class).executeWithoutResult(status ->
+                nodeA.getBean(CouponRepository.class).incrementUsage(couponId, 2));
+        assertThatThrownBy(() -> service(nodeA).applyCoupon(couponId, cart()))
+                .isInstanceOf(CouponException.class)
+                .hasMessageContaining("usage limit");
+
+        awaitTrue(() -> !applicableCodes(nodeA, cart()).contains("FEED40"));
+        awaitTrue(() -> !applicableCodes(nodeB, cart()).contains("FEED40"));
+    }
+
+    // Arguments, since builder properties are only defaults that application.properties overrides
+    private static ConfigurableApplicationContext startNode(String nodeId, String ddlAuto) {
+        return new SpringApplicationBuilder(CouponManagementStart.class)
+                .web(WebApplicationType.NONE)
+                .run("--coupon.node-id=" + nodeId,
+                        "--spring.datasource.url=" + DATABASE_URL,
+                        "--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                        "--coupon.sample-data.enabled=false",
+                        "--coupon.changes.poll-interval-ms=50",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.org.hibernate.SQL=INFO",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO");
+    }
+
+    private static CouponService service(ConfigurableApplicationContext node) {
+        return node.getBean(CouponService.class);
+    }
+
+    // Cart-wise coupons are candidates for every cart
+    private static List<Long> catalogIds(ConfigurableApplicationContext node) {
+        return node.getBean(CouponCatalog.class).snapshot().candidatesFor(new long[0]).stream()
+                .map(CompiledCoupon::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> applicableCodes(ConfigurableApplicationContext node, CartRequest cart) {
+        return service(node).getApplicableCoupons(cart, null, null).getApplicableCoupons().stream()
+                .map(CouponResponse::getCode)
+                .collect(Collectors.toList());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("waited %d ms for the change feed", TIMEOUT_MILLIS)
+                    .isLessThan(deadline);
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static CouponRequest couponRequest(String code) {
+        CouponRequest request = new CouponRequest();
+        request.setCode(code);
+        request.setName(code);
+        request.setDescription("Change feed test coupon");
+        request.setType(Coupon.CouponType.CART_WISE);
+        request.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+        request.setDiscountValue(BigDecimal.TEN);
+        return request;
+    }
+
+    private static CartRequest cart() {
+        return new CartRequest(Collections.singletonList(
+                new CartRequest.CartItemRequest(1L, "Product 1", 2, new BigDecimal("50.00"))));
+    }
+}
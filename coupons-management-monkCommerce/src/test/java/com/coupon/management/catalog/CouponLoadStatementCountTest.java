@@ -0,0 +1,139 @@
+package com.coupon.management.catalog;
+
+import com.coupon.management.dto.CouponFilter;
+import com.coupon.management.dto.CouponResponse;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Loading the catalog must take the same number of statements however many coupons,
+// rules and products there are
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CouponLoadStatementCountTest {
+
+    private static final int COUPONS = 6;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    private Statistics statistics;
+    private int created;
+
+    @BeforeEach
+    void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void catalogLoadDoesNotGrowWithTheCatalog() {
+        createCoupons(COUPONS);
+        long small = statementsFor(this::loadCatalog);
+
+        createCoupons(9 * COUPONS);
+        long large = statementsFor(this::loadCatalog);
+
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void couponListDoesNotGrowWithTheCatalog() {
+        createCoupons(COUPONS);
+        long small = statementsFor(this::streamCoupons);
+
+        createCoupons(9 * COUPONS);
+        long large = statementsFor(this::streamCoupons);
+
+        assertThat(large).isEqualTo(small);
+    }
+
+    // What CouponCatalog.refresh reads, with every collection touched by the copy
+    private List<Coupon> loadCatalog() {
+        List<Coupon> coupons = new ArrayList<>(couponRepository.findByActiveTrueAndValidUntilIsNull());
+        List<Coupon> copies = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) {
+            copies.add(CouponCatalog.detachedCopy(coupon));
+        }
+        assertThat(copies).hasSize(created);
+        return copies;
+    }
+
+    // What getAllCoupons and exportCoupons read
+    private List<CouponResponse> streamCoupons() {
+        List<CouponResponse> responses = new ArrayList<>();
+        couponRepository.forEachMatching(new CouponFilter(), responses::add);
+        assertThat(responses).hasSize(created);
+        return responses;
+    }
+
+    // Starts from an empty persistence context, so every load goes to the database
+    private long statementsFor(Supplier<?> load) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        load.get();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void createCoupons(int count) {
+        for (int i = 0; i < count; i++) {
+            int n = created++;
+            entityManager.persist(n % 2 == 0 ? productWise(n) : buyXGetY(n));
+        }
+    }
+
+    private static Coupon productWise(int n) {
+        Coupon coupon = coupon(n, Coupon.CouponType.PRODUCT_WISE);
+        coupon.setApplicableProductIds(Arrays.asList((long) n, n + 1L, n + 2L));
+        return coupon;
+    }
+
+    private static Coupon buyXGetY(int n) {
+        Coupon coupon = coupon(n, Coupon.CouponType.BXGY);
+        coupon.setBxgyRules(Arrays.asList(rule(coupon, n, 1), rule(coupon, n + 10, 2)));
+        return coupon;
+    }
+
+    private static BxGyRule rule(Coupon coupon, long productId, int priority) {
+        BxGyRule rule = new BxGyRule();
+        rule.setCoupon(coupon);
+        rule.setBuyQuantity(2);
+        rule.setBuyProductIds(Arrays.asList(productId, productId + 1));
+        rule.setGetQuantity(1);
+        rule.setGetProductIds(Arrays.asList(productId + 2, productId + 3));
+        rule.setPriority(priority);
+        return rule;
+    }
+
+    private static Coupon coupon(int n, Coupon.CouponType type) {
+        Coupon coupon = new Coupon();
+        coupon.setCode("LOAD" + n);
+        coupon.setName("Load " + n);
+        coupon.setDescription("Statement count test coupon");
+        coupon.setType(type);
+        coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+        coupon.setDiscountValue(BigDecimal.TEN);
+        return coupon;
+    }
+}
@@ -0,0 +1,47 @@
+package com.coupon.management.dto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CouponCombinationRequestTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void exclusiveGroupsAreValid() {
+        assertThat(violations(Arrays.asList(Arrays.asList(1L, 2L), Collections.singletonList(3L)))).isEmpty();
+        assertThat(violations(null)).isEmpty();
+    }
+
+    @Test
+    void nullGroupIsRejected() {
+        assertThat(violations(Arrays.asList(Arrays.asList(1L, 2L), null)))
+                .containsExactly("Exclusivity groups cannot be null");
+    }
+
+    @Test
+    void nullCouponIdIsRejected() {
+        assertThat(violations(Collections.singletonList(Arrays.asList(1L, null))))
+                .containsExactly("Coupon IDs in exclusivity groups cannot be null");
+    }
+
+    private Set<String> violations(List<List<Long>> exclusiveGroups) {
+        CartRequest.CartItemRequest item = new CartRequest.CartItemRequest(1L, "Product 1", 1, BigDecimal.TEN);
+        CouponCombinationRequest request = new CouponCombinationRequest(Collections.singletonList(item), null,
+                exclusiveGroups, null);
+        return validator.validate(request).stream()
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,78 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.dto.CartRequest;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CartViewTest {
+
+    @Test
+    void mergesLinesByProduct() {
+        CartView cart = TestCoupons.cart(
+                TestCoupons.item(2L, 1, "5.00"),
+                TestCoupons.item(1L, 2, "3.00"),
+                TestCoupons.item(2L, 3, "5.00"));
+
+        assertThat(cart.size()).isEqualTo(2);
+        assertThat(cart.productId(0)).isEqualTo(1L);
+        assertThat(cart.quantity(1)).isEqualTo(4);
+        assertThat(cart.lineTotal(1)).isEqualTo(2_000L);
+        assertThat(cart.total()).isEqualTo(2_600L);
+        assertThat(cart.totalQuantity()).isEqualTo(6L);
+    }
+
+    @Test
+    void ranksLinesCheapestFirstWithTiesInProductOrder() {
+        CartView cart = TestCoupons.cart(
+                TestCoupons.item(1L, 1, "9.99"),
+                TestCoupons.item(2L, 2, "0.50"),
+                TestCoupons.item(3L, 1, "9.99"),
+                TestCoupons.item(4L, 3, "0.34"),
+                TestCoupons.item(5L, 4, "0.50"));
+
+        assertThat(ranks(cart)).containsExactly(3, 1, 4, 0, 2);
+    }
+
+    // Against a stable boxed sort on the unit price, which is what the ranks replace
+    @Test
+    void ranksMatchAStableSortByUnitPrice() {
+        Random random = new Random(11L);
+        for (int round = 0; round < 2_000; round++) {
+            List<CartRequest.CartItemRequest> items = new ArrayList<>();
+            int count = 1 + random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                // Few distinct prices, so many lines tie
+                items.add(TestCoupons.item(1 + random.nextInt(80), 1 + random.nextInt(4),
+                        BigDecimal.valueOf(1 + random.nextInt(12), 1).toPlainString()));
+            }
+            CartView cart = CartView.of(new CartRequest(items));
+
+            Integer[] order = new Integer[cart.size()];
+            for (int line = 0; line < order.length; line++) {
+                order[line] = line;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare((double) cart.lineTotal(a) / cart.quantity(a),
+                    (double) cart.lineTotal(b) / cart.quantity(b)));
+            int[] expected = new int[order.length];
+            for (int rank = 0; rank < order.length; rank++) {
+                expected[order[rank]] = rank;
+            }
+            assertThat(ranks(cart)).as("round %d", round).containsExactly(expected);
+        }
+    }
+
+    private static int[] ranks(CartView cart) {
+        int[] ranks = new int[cart.size()];
+        for (int line = 0; line < ranks.length; line++) {
+            ranks[line] = cart.priceRank(line);
+        }
+        return ranks;
+    }
+}
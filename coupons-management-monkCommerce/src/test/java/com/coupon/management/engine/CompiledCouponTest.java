@@ -0,0 +1,99 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledCouponTest {
+
+    private static final int ROUNDS = 5_000;
+
+    private final Random random = new Random(7L);
+
+    // Ranking uses discount(), applying uses plan(); they must never disagree
+    @Test
+    void discountIsThePlanTotal() {
+        for (int round = 0; round < ROUNDS; round++) {
+            CartView cart = randomCart();
+            CompiledCoupon coupon = CompiledCoupon.compile(randomCoupon());
+            assertThat(coupon.discount(cart)).as("round %d, %s", round, coupon.getCoupon())
+                    .isEqualTo(coupon.plan(cart).total());
+            assertThat(coupon.upperBound(cart)).isGreaterThanOrEqualTo(coupon.discount(cart));
+            if (coupon.isUpperBoundExact()) {
+                assertThat(coupon.upperBound(cart)).isEqualTo(coupon.discount(cart));
+            }
+        }
+    }
+
+    @Test
+    void onlyOrderLevelCouponsDiscountASubtotal() {
+        CompiledCoupon cartWise = TestCoupons.cartWise(1L, "CART10", Coupon.DiscountType.PERCENTAGE, "10");
+        CompiledCoupon productWise = TestCoupons.productWise(2L, "PRODUCT10", Coupon.DiscountType.PERCENTAGE,
+                "10", 1L);
+        CompiledCoupon buyXGetY = TestCoupons.buyOneGetOne(3L, "BOGO", 1L, 2L);
+
+        assertThat(cartWise.isOrderLevel()).isTrue();
+        assertThat(cartWise.discountOnSubtotal(10_000L)).isEqualTo(1_000L);
+        assertThat(productWise.isOrderLevel()).isFalse();
+        assertThat(productWise.discountOnSubtotal(10_000L)).isZero();
+        assertThat(buyXGetY.isOrderLevel()).isFalse();
+        assertThat(buyXGetY.discountOnSubtotal(10_000L)).isZero();
+    }
+
+    private CartView randomCart() {
+        int count = 1 + random.nextInt(12);
+        List<CartRequest.CartItemRequest> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(TestCoupons.item(1 + random.nextInt(8), 1 + random.nextInt(6),
+                    BigDecimal.valueOf(1 + random.nextInt(20_000), 2).toPlainString()));
+        }
+        return CartView.of(new CartRequest(items));
+    }
+
+    private Coupon randomCoupon() {
+        Coupon.CouponType type = Coupon.CouponType.values()[random.nextInt(Coupon.CouponType.values().length)];
+        boolean percentage = random.nextBoolean();
+        Coupon coupon = TestCoupons.coupon(1L, "RANDOM", type,
+                percentage ? Coupon.DiscountType.PERCENTAGE : Coupon.DiscountType.FIXED_AMOUNT,
+                String.valueOf(1 + random.nextInt(percentage ? 100 : 30)));
+        if (random.nextBoolean()) {
+            coupon.setMaxDiscountAmount(BigDecimal.valueOf(1 + random.nextInt(50)));
+        }
+        if (random.nextInt(4) == 0) {
+            coupon.setMinimumCartValue(BigDecimal.valueOf(random.nextInt(300)));
+        }
+        coupon.setApplicableProductIds(productIds());
+        List<BxGyRule> rules = new ArrayList<>();
+        for (int priority = 1; priority <= 1 + random.nextInt(3); priority++) {
+            BxGyRule rule = new BxGyRule();
+            rule.setCoupon(coupon);
+            rule.setBuyQuantity(1 + random.nextInt(3));
+            rule.setBuyProductIds(productIds());
+            rule.setGetQuantity(1 + random.nextInt(2));
+            rule.setGetProductIds(productIds());
+            rule.setPriority(priority);
+            rules.add(rule);
+        }
+        coupon.setBxgyRules(rules);
+        coupon.setRepetitionLimit(1 + random.nextInt(3));
+        return coupon;
+    }
+
+    private List<Long> productIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 8; id++) {
+            if (random.nextInt(3) == 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,210 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.entity.Coupon;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The cents evaluation against the BigDecimal formulas it replaced, on seeded random carts
+// and coupons. BXGY is left out: its allocation was deliberately changed since
+class MoneyEquivalenceTest {
+
+    private static final int ROUNDS = 5_000;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private final Random random = new Random(20241018L);
+
+    @Test
+    void cartWiseMatchesBigDecimal() {
+        for (int round = 0; round < ROUNDS; round++) {
+            List<CartRequest.CartItemRequest> items = randomItems(false);
+            Coupon coupon = randomCoupon(Coupon.CouponType.CART_WISE);
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (CartRequest.CartItemRequest item : items) {
+                total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+            }
+            BigDecimal expected;
+            if (coupon.getMinimumCartValue() != null && total.compareTo(coupon.getMinimumCartValue()) < 0) {
+                expected = BigDecimal.ZERO;
+            } else {
+                expected = cap(coupon, isPercentage(coupon)
+                        ? percentageOf(total, coupon.getDiscountValue()) : coupon.getDiscountValue());
+            }
+
+            CartView cart = CartView.of(new CartRequest(items));
+            assertThat(cart.total()).isEqualTo(Money.toCents(total));
+            assertThat(CompiledCoupon.compile(coupon).discount(cart))
+                    .as("round %d, %s", round, coupon)
+                    .isEqualTo(Money.toCents(expected));
+        }
+    }
+
+    @Test
+    void productWiseMatchesBigDecimalPerLine() {
+        for (int round = 0; round < ROUNDS; round++) {
+            // Every other cart lists each product once, so no request lines are merged
+            boolean distinctProducts = round % 2 == 0;
+            List<CartRequest.CartItemRequest> items = randomItems(distinctProducts);
+            Coupon coupon = randomCoupon(Coupon.CouponType.PRODUCT_WISE);
+
+            // The old evaluator rounded each request item on its own
+            BigDecimal perItem = BigDecimal.ZERO;
+            int discountedItems = 0;
+            for (CartRequest.CartItemRequest item : items) {
+                if (coupon.getApplicableProductIds().contains(item.getProductId())) {
+                    perItem = perItem.add(isPercentage(coupon)
+                            ? percentageOf(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())),
+                            coupon.getDiscountValue())
+                            : coupon.getDiscountValue().multiply(BigDecimal.valueOf(item.getQuantity())));
+                    discountedItems++;
+                }
+            }
+            long baseline = Money.toCents(cap(coupon, perItem));
+
+            // Lines merged per product, as CartView merges them
+            Map<Long, BigDecimal> lineTotals = new TreeMap<>();
+            Map<Long, Integer> quantities = new TreeMap<>();
+            for (CartRequest.CartItemRequest item : items) {
+                lineTotals.merge(item.getProductId(),
+                        item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())), BigDecimal::add);
+                quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            }
+            List<BigDecimal> expectedLines = new ArrayList<>();
+            BigDecimal uncapped = BigDecimal.ZERO;
+            for (Map.Entry<Long, BigDecimal> line : lineTotals.entrySet()) {
+                BigDecimal lineDiscount = BigDecimal.ZERO;
+                if (coupon.getApplicableProductIds().contains(line.getKey())) {
+                    lineDiscount = isPercentage(coupon)
+                            ? percentageOf(line.getValue(), coupon.getDiscountValue())
+                            : coupon.getDiscountValue().multiply(BigDecimal.valueOf(quantities.get(line.getKey())));
+                }
+                expectedLines.add(lineDiscount);
+                uncapped = uncapped.add(lineDiscount);
+            }
+            BigDecimal expected = cap(coupon, uncapped);
+
+            CartView cart = CartView.of(new CartRequest(items));
+            CompiledCoupon compiled = CompiledCoupon.compile(coupon);
+            DiscountPlan plan = compiled.plan(cart);
+            if (distinctProducts) {
+                assertThat(compiled.discount(cart)).as("round %d, %s", round, coupon).isEqualTo(baseline);
+            } else {
+                // A merged line is rounded once instead of once per item, under half a cent each
+                assertThat(compiled.discount(cart)).as("round %d, %s", round, coupon)
+                        .isBetween(baseline - discountedItems, baseline + discountedItems);
+            }
+            assertThat(compiled.discount(cart)).as("round %d, %s", round, coupon)
+                    .isEqualTo(Money.toCents(expected));
+            assertThat(plan.total()).isEqualTo(Money.toCents(expected));
+            assertThat(plan.uncappedTotal()).isEqualTo(Money.toCents(uncapped));
+
+            long lineSum = 0L;
+            for (int line = 0; line < cart.size(); line++) {
+                long expectedLine = Money.toCents(expectedLines.get(line));
+                if (plan.isCapped()) {
+                    // The cap is spread in proportion: each line gets its floored share, some a cent more
+                    long share = expectedLines.get(line).multiply(expected)
+                            .divide(uncapped, 2, RoundingMode.DOWN).movePointRight(2).longValueExact();
+                    assertThat(plan.lineDiscount(line)).as("round %d, line %d", round, line)
+                            .isBetween(share, Math.min(share + 1, expectedLine));
+                } else {
+                    assertThat(plan.lineDiscount(line)).as("round %d, line %d", round, line)
+                            .isEqualTo(expectedLine);
+                }
+                lineSum += plan.lineDiscount(line);
+            }
+            assertThat(lineSum).isEqualTo(plan.total());
+        }
+    }
+
+    @Test
+    void percentageMatchesBigDecimalIncludingOverflow() {
+        for (int round = 0; round < ROUNDS; round++) {
+            // Up to Long.MAX_VALUE / 100, so about half the products overflow a long
+            long amount = (random.nextLong() >>> 1) / (1 + random.nextInt(10_000) * 100L);
+            long rate = random.nextInt(10_001);
+            long expected = BigDecimal.valueOf(amount).multiply(BigDecimal.valueOf(rate))
+                    .divide(BigDecimal.valueOf(10_000), 0, RoundingMode.HALF_UP).longValueExact();
+            assertThat(Money.percentage(amount, rate)).as("%d at %d", amount, rate).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void divideHalfUpMatchesBigDecimal() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long dividend = random.nextLong() >> random.nextInt(63);
+            long divisor = random.nextInt(20_001) - 10_000L;
+            if (divisor == 0) {
+                continue;
+            }
+            long expected = BigDecimal.valueOf(dividend)
+                    .divide(BigDecimal.valueOf(divisor), 0, RoundingMode.HALF_UP).longValueExact();
+            assertThat(Money.divideHalfUp(dividend, divisor)).as("%d / %d", dividend, divisor)
+                    .isEqualTo(expected);
+        }
+    }
+
+    // x * value / 100 rounded HALF_UP to cents, the way the BigDecimal evaluator computed it
+    private static BigDecimal percentageOf(BigDecimal amount, BigDecimal discountValue) {
+        return amount.multiply(discountValue.movePointLeft(2)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal cap(Coupon coupon, BigDecimal discount) {
+        if (coupon.getMaxDiscountAmount() != null) {
+            discount = discount.min(coupon.getMaxDiscountAmount());
+        }
+        return discount.max(BigDecimal.ZERO);
+    }
+
+    private static boolean isPercentage(Coupon coupon) {
+        return coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE;
+    }
+
+    private List<CartRequest.CartItemRequest> randomItems(boolean distinctProducts) {
+        int count = distinctProducts ? 1 + random.nextInt(15) : 1 + random.nextInt(40);
+        List<CartRequest.CartItemRequest> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Otherwise few products, so some lines are merged
+            long productId = distinctProducts ? i + 1 : 1 + random.nextInt(15);
+            items.add(TestCoupons.item(productId, 1 + random.nextInt(20), cents(1, 99_999)));
+        }
+        return items;
+    }
+
+    private Coupon randomCoupon(Coupon.CouponType type) {
+        boolean percentage = random.nextBoolean();
+        Coupon coupon = TestCoupons.coupon(1L, "RANDOM", type,
+                percentage ? Coupon.DiscountType.PERCENTAGE : Coupon.DiscountType.FIXED_AMOUNT,
+                percentage ? cents(1, 10_000) : cents(1, 5_000));
+        if (random.nextBoolean()) {
+            coupon.setMaxDiscountAmount(new BigDecimal(cents(100, 20_000)));
+        }
+        if (random.nextInt(4) == 0) {
+            coupon.setMinimumCartValue(new BigDecimal(cents(0, 500_000)));
+        }
+        List<Long> productIds = new ArrayList<>();
+        for (long id = 1; id <= 15; id++) {
+            if (random.nextInt(3) == 0) {
+                productIds.add(id);
+            }
+        }
+        coupon.setApplicableProductIds(productIds.isEmpty() ? Arrays.asList(1L) : productIds);
+        return coupon;
+    }
+
+    // A random amount between the bounds, given and returned in cents, as a two-decimal string
+    private String cents(int fromCents, int toCents) {
+        return BigDecimal.valueOf(fromCents + random.nextInt(toCents - fromCents + 1), 2).toPlainString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.entity.Coupon;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearMissCollectorTest {
+
+    private final CartView cart = TestCoupons.cart(TestCoupons.item(1L, 2, "10.00"));
+
+    @Test
+    void itemLevelCouponsCountOnlyWhenTheyDiscountTheCart() {
+        NearMissCollector collector = new NearMissCollector(10);
+        collector.offer(TestCoupons.cartWise(1L, "CART10", Coupon.DiscountType.PERCENTAGE, "10"), cart, 3_000L, 0);
+        collector.offer(TestCoupons.productWise(2L, "OTHER10", Coupon.DiscountType.PERCENTAGE, "10", 2L),
+                cart, 3_000L, 1);
+        collector.offer(TestCoupons.productWise(3L, "PRODUCT10", Coupon.DiscountType.PERCENTAGE, "10", 1L),
+                cart, 3_000L, 2);
+        collector.offer(TestCoupons.buyOneGetOne(4L, "BOGO", 3L, 4L), cart, 3_000L, 3);
+
+        assertThat(codes(collector)).containsExactly("CART10", "PRODUCT10");
+    }
+
+    @Test
+    void keepsTheSmallestShortfallsInCatalogOrder() {
+        NearMissCollector collector = new NearMissCollector(2);
+        collector.offer(TestCoupons.cartWise(1L, "FAR", Coupon.DiscountType.FIXED_AMOUNT, "5"), cart, 9_000L, 0);
+        collector.offer(TestCoupons.cartWise(2L, "LATER", Coupon.DiscountType.FIXED_AMOUNT, "5"), cart, 1_000L, 2);
+        collector.offer(TestCoupons.cartWise(3L, "EARLIER", Coupon.DiscountType.FIXED_AMOUNT, "5"), cart, 1_000L, 1);
+
+        assertThat(codes(collector)).containsExactly("EARLIER", "LATER");
+    }
+
+    private static List<String> codes(NearMissCollector collector) {
+        return collector.results().stream()
+                .map(nearMiss -> nearMiss.getCoupon().getCode())
+                .collect(Collectors.toList());
+    }
+}
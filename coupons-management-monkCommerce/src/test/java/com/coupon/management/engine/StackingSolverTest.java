@@ -0,0 +1,228 @@
+package com.coupon.management.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.coupon.management.engine.TestCoupons.buyOneGetOne;
+import static com.coupon.management.engine.TestCoupons.cart;
+import static com.coupon.management.engine.TestCoupons.cartWise;
+import static com.coupon.management.engine.TestCoupons.item;
+import static com.coupon.management.engine.TestCoupons.productWise;
+import static com.coupon.management.entity.Coupon.DiscountType.FIXED_AMOUNT;
+import static com.coupon.management.entity.Coupon.DiscountType.PERCENTAGE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class StackingSolverTest {
+
+    private static final long TIME_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void itemLevelCouponsOnOneLineNeverDiscountItBelowZero() {
+        CartView cart = cart(item(1L, 1, "10.00"), item(2L, 1, "100.00"));
+        CompiledCoupon productWise = productWise(1L, "PROD8", FIXED_AMOUNT, "8.00", 1L);
+        // Buying product 2 makes the only unit of product 1 free
+        CompiledCoupon bxgy = buyOneGetOne(2L, "B1G1", 2L, 1L);
+        CompiledCoupon cartWise = cartWise(3L, "CART10", PERCENTAGE, "10");
+
+        StackingSolver.Result result = solve(cart, 3, Collections.<Long, Long>emptyMap(),
+                productWise, bxgy, cartWise);
+
+        // Product 1 is already free, so PROD8 adds nothing; 10% then comes off the 100.00 left
+        assertThat(result.getTotalDiscount()).isEqualTo(2000L);
+        assertThat(result.getApplied())
+                .extracting(applied -> applied.getCoupon().getCode(), StackingSolver.Applied::getDiscount)
+                .containsExactly(tuple("B1G1", 1000L), tuple("CART10", 1000L));
+        assertThat(result.isOptimal()).isTrue();
+    }
+
+    @Test
+    void overlappingCouponsShareWhatIsLeftOfTheLine() {
+        CartView cart = cart(item(1L, 2, "5.00"), item(2L, 1, "40.00"));
+        CompiledCoupon first = productWise(1L, "SIXTY", PERCENTAGE, "60", 1L);
+        CompiledCoupon second = productWise(2L, "SEVENTY", PERCENTAGE, "70", 1L);
+
+        StackingSolver.Result result = solve(cart, 2, Collections.<Long, Long>emptyMap(), first, second);
+
+        assertThat(result.getTotalDiscount()).isEqualTo(1000L);
+        assertThat(result.getApplied())
+                .extracting(applied -> applied.getCoupon().getCode(), StackingSolver.Applied::getDiscount)
+                .containsExactly(tuple("SEVENTY", 700L), tuple("SIXTY", 300L));
+    }
+
+    @Test
+    void exclusiveGroupContributesAtMostOneCoupon() {
+        CartView cart = cart(item(1L, 1, "20.00"), item(2L, 1, "20.00"), item(3L, 1, "20.00"));
+        CompiledCoupon five = productWise(1L, "FIVE", FIXED_AMOUNT, "5.00", 1L);
+        CompiledCoupon four = productWise(2L, "FOUR", FIXED_AMOUNT, "4.00", 2L);
+        CompiledCoupon three = productWise(3L, "THREE", FIXED_AMOUNT, "3.00", 3L);
+        Map<Long, Long> groups = new HashMap<>();
+        groups.put(1L, 1L);
+        groups.put(2L, 1L);
+
+        StackingSolver.Result result = solve(cart, 3, groups, five, four, three);
+
+        assertThat(result.getTotalDiscount()).isEqualTo(800L);
+        assertThat(result.getApplied()).extracting(applied -> applied.getCoupon().getCode())
+                .containsExactly("FIVE", "THREE");
+    }
+
+    @Test
+    void couponInTwoGroupsExcludesMembersOfBoth() {
+        CartView cart = cart(item(1L, 1, "20.00"), item(2L, 1, "20.00"), item(3L, 1, "20.00"));
+        CompiledCoupon both = productWise(1L, "BOTH", FIXED_AMOUNT, "6.00", 1L);
+        CompiledCoupon firstGroup = productWise(2L, "FIRST", FIXED_AMOUNT, "4.00", 2L);
+        CompiledCoupon secondGroup = productWise(3L, "SECOND", FIXED_AMOUNT, "3.00", 3L);
+        Map<Long, Long> groups = new HashMap<>();
+        groups.put(1L, 0b11L);
+        groups.put(2L, 0b01L);
+        groups.put(3L, 0b10L);
+
+        StackingSolver.Result result = solve(cart, 3, groups, both, firstGroup, secondGroup);
+
+        // FIRST and SECOND together beat BOTH alone
+        assertThat(result.getTotalDiscount()).isEqualTo(700L);
+        assertThat(result.getApplied()).extracting(applied -> applied.getCoupon().getCode())
+                .containsExactly("FIRST", "SECOND");
+    }
+
+    @Test
+    void maxCouponsLimitsTheCombination() {
+        CartView cart = cart(item(1L, 1, "20.00"), item(2L, 1, "20.00"), item(3L, 1, "20.00"));
+        CompiledCoupon five = productWise(1L, "FIVE", FIXED_AMOUNT, "5.00", 1L);
+        CompiledCoupon four = productWise(2L, "FOUR", FIXED_AMOUNT, "4.00", 2L);
+        CompiledCoupon three = productWise(3L, "THREE", FIXED_AMOUNT, "3.00", 3L);
+
+        StackingSolver.Result result = solve(cart, 2, Collections.<Long, Long>emptyMap(), five, four, three);
+
+        assertThat(result.getTotalDiscount()).isEqualTo(900L);
+        assertThat(result.getApplied()).extracting(applied -> applied.getCoupon().getCode())
+                .containsExactly("FIVE", "FOUR");
+    }
+
+    @Test
+    void orderLevelCouponsApplyToWhatItemLevelOnesLeft() {
+        CartView cart = cart(item(1L, 1, "50.00"), item(2L, 1, "50.00"));
+        CompiledCoupon productWise = productWise(1L, "PROD20", FIXED_AMOUNT, "20.00", 1L);
+        CompiledCoupon percentage = cartWise(2L, "CART10", PERCENTAGE, "10");
+        CompiledCoupon fixed = cartWise(3L, "CART5", FIXED_AMOUNT, "5.00");
+
+        StackingSolver.Result result = solve(cart, 3, Collections.<Long, Long>emptyMap(),
+                productWise, percentage, fixed);
+
+        // 100.00 - 20.00 = 80.00, then 10% of it, then 5.00 off the 72.00 left
+        assertThat(result.getTotalDiscount()).isEqualTo(3300L);
+        assertThat(result.getApplied()).extracting(StackingSolver.Applied::getDiscount)
+                .containsExactly(2000L, 800L, 500L);
+    }
+
+    @Test
+    void pruningNeverMissesTheBestCombination() {
+        Random random = new Random(2024L);
+        for (int round = 0; round < 300; round++) {
+            CartView cart = cart(item(1L, 1 + random.nextInt(3), "12.00"), item(2L, 1 + random.nextInt(3), "7.50"),
+                    item(3L, 1, "30.00"));
+            CompiledCoupon[] coupons = new CompiledCoupon[7];
+            for (int i = 0; i < coupons.length; i++) {
+                long id = i + 1;
+                long product = 1 + random.nextInt(3);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        coupons[i] = cartWise(id, "C" + id, random.nextBoolean() ? PERCENTAGE : FIXED_AMOUNT,
+                                String.valueOf(1 + random.nextInt(30)));
+                        break;
+                    case 1:
+                        coupons[i] = productWise(id, "P" + id, random.nextBoolean() ? PERCENTAGE : FIXED_AMOUNT,
+                                String.valueOf(1 + random.nextInt(60)), product);
+                        break;
+                    default:
+                        coupons[i] = buyOneGetOne(id, "B" + id, 1 + random.nextInt(3), product);
+                        break;
+                }
+            }
+            Map<Long, Long> groups = new HashMap<>();
+            for (long id = 1; id <= coupons.length; id++) {
+                if (random.nextInt(3) == 0) {
+                    groups.put(id, 1L << random.nextInt(2));
+                }
+            }
+            int maxCoupons = 1 + random.nextInt(coupons.length);
+
+            List<StackingSolver.Candidate> candidates = candidates(cart, coupons);
+            StackingSolver.Result result = new StackingSolver(candidates, cart, maxCoupons, groups,
+                    TIME_BUDGET_NANOS).solve();
+
+            assertThat(result.getTotalDiscount()).as("round %d", round)
+                    .isEqualTo(bruteForce(cart, candidates, maxCoupons, groups));
+            assertThat(result.getApplied().stream().mapToLong(StackingSolver.Applied::getDiscount).sum())
+                    .isEqualTo(result.getTotalDiscount());
+        }
+    }
+
+    // Every subset, valued the way applying it would: lines capped at their totals, then
+    // order-level coupons in candidate order on what is left
+    private static long bruteForce(CartView cart, List<StackingSolver.Candidate> candidates, int maxCoupons,
+                                   Map<Long, Long> groups) {
+        long best = 0L;
+        for (int subset = 1; subset < 1 << candidates.size(); subset++) {
+            if (Integer.bitCount(subset) > maxCoupons) {
+                continue;
+            }
+            long usedGroups = 0L;
+            boolean excluded = false;
+            long[] lineSums = new long[cart.size()];
+            for (int i = 0; i < candidates.size(); i++) {
+                if ((subset & 1 << i) == 0) {
+                    continue;
+                }
+                StackingSolver.Candidate candidate = candidates.get(i);
+                long mask = groups.getOrDefault(candidate.getCoupon().getId(), 0L);
+                excluded |= (usedGroups & mask) != 0;
+                usedGroups |= mask;
+                for (int line = 0; line < cart.size(); line++) {
+                    lineSums[line] += candidate.getPlan().lineDiscount(line);
+                }
+            }
+            if (excluded) {
+                continue;
+            }
+            long subtotal = cart.total();
+            for (int line = 0; line < cart.size(); line++) {
+                subtotal -= Math.min(lineSums[line], cart.lineTotal(line));
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                CompiledCoupon coupon = candidates.get(i).getCoupon();
+                if ((subset & 1 << i) != 0 && coupon.isOrderLevel()) {
+                    subtotal -= Math.min(coupon.discountOnSubtotal(subtotal), subtotal);
+                }
+            }
+            best = Math.max(best, cart.total() - subtotal);
+        }
+        return best;
+    }
+
+    private static StackingSolver.Result solve(CartView cart, int maxCoupons, Map<Long, Long> groups,
+                                               CompiledCoupon... coupons) {
+        return new StackingSolver(candidates(cart, coupons), cart, maxCoupons, groups, TIME_BUDGET_NANOS).solve();
+    }
+
+    // Candidates the way the service hands them over: applicable only, best standalone first
+    private static List<StackingSolver.Candidate> candidates(CartView cart, CompiledCoupon... coupons) {
+        List<StackingSolver.Candidate> candidates = new ArrayList<>();
+        for (CompiledCoupon coupon : coupons) {
+            DiscountPlan plan = coupon.plan(cart);
+            if (plan.isApplicable()) {
+                candidates.add(new StackingSolver.Candidate(coupon, plan));
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.getDiscount(), a.getDiscount()));
+        return candidates;
+    }
+}
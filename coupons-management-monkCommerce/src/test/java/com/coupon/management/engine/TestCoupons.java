@@ -0,0 +1,63 @@
+package com.coupon.management.engine;
+
+import com.coupon.management.dto.CartRequest;
+import com.coupon.management.entity.BxGyRule;
+import com.coupon.management.entity.Coupon;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+// Coupons and carts for the engine tests, built the way the catalog and CartView.of build them
+final class TestCoupons {
+
+    private TestCoupons() {
+    }
+
+    static Coupon coupon(long id, String code, Coupon.CouponType type, Coupon.DiscountType discountType,
+                         String discountValue) {
+        Coupon coupon = new Coupon();
+        coupon.setId(id);
+        coupon.setCode(code);
+        coupon.setName(code);
+        coupon.setDescription(code);
+        coupon.setType(type);
+        coupon.setDiscountType(discountType);
+        coupon.setDiscountValue(new BigDecimal(discountValue));
+        return coupon;
+    }
+
+    static CompiledCoupon cartWise(long id, String code, Coupon.DiscountType discountType, String discountValue) {
+        return CompiledCoupon.compile(coupon(id, code, Coupon.CouponType.CART_WISE, discountType, discountValue));
+    }
+
+    static CompiledCoupon productWise(long id, String code, Coupon.DiscountType discountType, String discountValue,
+                                      Long... productIds) {
+        Coupon coupon = coupon(id, code, Coupon.CouponType.PRODUCT_WISE, discountType, discountValue);
+        coupon.setApplicableProductIds(Arrays.asList(productIds));
+        return CompiledCoupon.compile(coupon);
+    }
+
+    // Buy one of buyProductId, get one of getProductId free, once
+    static CompiledCoupon buyOneGetOne(long id, String code, long buyProductId, long getProductId) {
+        Coupon coupon = coupon(id, code, Coupon.CouponType.BXGY, Coupon.DiscountType.FIXED_AMOUNT, "0");
+        BxGyRule rule = new BxGyRule();
+        rule.setCoupon(coupon);
+        rule.setBuyQuantity(1);
+        rule.setBuyProductIds(Collections.singletonList(buyProductId));
+        rule.setGetQuantity(1);
+        rule.setGetProductIds(Collections.singletonList(getProductId));
+        rule.setPriority(1);
+        coupon.setBxgyRules(Collections.singletonList(rule));
+        coupon.setRepetitionLimit(1);
+        return CompiledCoupon.compile(coupon);
+    }
+
+    static CartRequest.CartItemRequest item(long productId, int quantity, String price) {
+        return new CartRequest.CartItemRequest(productId, "Product " + productId, quantity, new BigDecimal(price));
+    }
+
+    static CartView cart(CartRequest.CartItemRequest... items) {
+        return CartView.of(new CartRequest(Arrays.asList(items)));
+    }
+}
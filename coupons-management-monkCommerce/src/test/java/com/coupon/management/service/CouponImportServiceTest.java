@@ -0,0 +1,98 @@
+package com.coupon.management.service;
+
+import com.coupon.management.catalog.CouponCatalogChangedEvent;
+import com.coupon.management.dto.CouponImportResponse;
+import com.coupon.management.exception.CouponException;
+import com.coupon.management.repository.CouponRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=jdbc:h2:mem:import-test;DB_CLOSE_DELAY=-1",
+        "coupon.sample-data.enabled=false",
+        "coupon.import.batch-size=2",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO"})
+@RecordApplicationEvents
+class CouponImportServiceTest {
+
+    @Autowired
+    private CouponImportService importService;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    @Test
+    void completeImportWritesEveryBatchAndRebuildsTheCatalogOnce() {
+        CouponImportResponse response = importService.importCoupons(
+                body(record("DONE1") + record("DONE2") + record("DONE3")));
+
+        assertThat(response.getImportedCoupons()).isEqualTo(3);
+        assertThat(couponRepository.existsByCode("DONE3")).isTrue();
+        assertThat(events.stream(CouponCatalogChangedEvent.class)).hasSize(1);
+    }
+
+    @Test
+    void readFailureKeepsWrittenBatchesAndDropsThePartialOne() {
+        InputStream input = new SequenceInputStream(
+                body(record("CUT1") + record("CUT2") + record("CUT3")), failingStream());
+
+        assertThatThrownBy(() -> importService.importCoupons(input))
+                .isInstanceOf(CouponException.class)
+                .hasMessageContaining("aborted at line 3")
+                .hasMessageContaining("2 coupons up to line 2 were imported");
+
+        assertThat(couponRepository.existsByCode("CUT1")).isTrue();
+        assertThat(couponRepository.existsByCode("CUT2")).isTrue();
+        assertThat(couponRepository.existsByCode("CUT3")).isFalse();
+        // The written batch still has to reach this node's catalog
+        assertThat(events.stream(CouponCatalogChangedEvent.class)).hasSize(1);
+    }
+
+    @Test
+    void readFailureBeforeTheFirstBatchImportsNothing() {
+        InputStream input = new SequenceInputStream(body(record("EARLY1")), failingStream());
+
+        assertThatThrownBy(() -> importService.importCoupons(input))
+                .isInstanceOf(CouponException.class)
+                .hasMessageContaining("aborted at line 1")
+                .hasMessageContaining("no coupons were imported");
+
+        assertThat(couponRepository.existsByCode("EARLY1")).isFalse();
+        assertThat(events.stream(CouponCatalogChangedEvent.class)).isEmpty();
+    }
+
+    private static String record(String code) {
+        return "{\"code\":\"" + code + "\",\"name\":\"" + code + "\",\"description\":\"Import test coupon\","
+                + "\"type\":\"CART_WISE\",\"discountValue\":10,\"discountType\":\"PERCENTAGE\",\"active\":true}\n";
+    }
+
+    private static InputStream body(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream failingStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package com.coupon.management.usage;
+
+import com.coupon.management.entity.Coupon;
+import com.coupon.management.repository.CouponRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Leases are reserved in their own transactions, so the test must not hold one open
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CouponUsageLedgerTest {
+
+    private static final int MAX_USAGE = 37;
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 20;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentRedemptionsOnTwoInstancesNeverExceedMaxUsage() throws Exception {
+        Long couponId = couponRepository.save(coupon("LIMITED", MAX_USAGE)).getId();
+        // Two ledgers on one table stand in for two instances sharing the database
+        CouponUsageLedger[] instances = {
+                new CouponUsageLedger(couponRepository, transactionManager, 5),
+                new CouponUsageLedger(couponRepository, transactionManager, 5)
+        };
+
+        Set<Integer> usages = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            CouponUsageLedger ledger = instances[thread % instances.length];
+            results.add(executor.submit(() -> {
+                start.await();
+                int accepted = 0;
+                for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+                    int usage = ledger.tryAcquire(couponId, 0, MAX_USAGE);
+                    if (usage != CouponUsageLedger.LIMIT_REACHED) {
+                        accepted++;
+                        assertThat(usages.add(usage)).as("usage %d handed out twice", usage).isTrue();
+                    }
+                    assertThat(couponRepository.findCurrentUsage(couponId)).isLessThanOrEqualTo(MAX_USAGE);
+                }
+                return accepted;
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        for (Future<Integer> result : results) {
+            accepted += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(accepted).isEqualTo(MAX_USAGE);
+        assertThat(usages).hasSize(MAX_USAGE).allMatch(usage -> usage >= 1 && usage <= MAX_USAGE);
+        assertThat(couponRepository.findCurrentUsage(couponId)).isEqualTo(MAX_USAGE);
+        for (CouponUsageLedger ledger : instances) {
+            assertThat(ledger.tryAcquire(couponId, 0, MAX_USAGE)).isEqualTo(CouponUsageLedger.LIMIT_REACHED);
+        }
+    }
+
+    @Test
+    void unusedLeaseIsCountedUntilReleased() {
+        Long couponId = couponRepository.save(coupon("LEASED", 100)).getId();
+        CouponUsageLedger ledger = new CouponUsageLedger(couponRepository, transactionManager, 10);
+
+        assertThat(ledger.tryAcquire(couponId, 0, 100)).isEqualTo(1);
+        assertThat(ledger.tryAcquire(couponId, 0, 100)).isEqualTo(2);
+        assertThat(couponRepository.findCurrentUsage(couponId)).isEqualTo(10);
+        assertThat(ledger.currentUsage(couponId, 10)).isEqualTo(2);
+
+        ledger.releaseUnused();
+        assertThat(couponRepository.findCurrentUsage(couponId)).isEqualTo(2);
+    }
+
+    @Test
+    void leaseShrinksNearTheLimit() {
+        Long couponId = couponRepository.save(coupon("NEARLY_GONE", 3)).getId();
+        CouponUsageLedger first = new CouponUsageLedger(couponRepository, transactionManager, 10);
+        CouponUsageLedger second = new CouponUsageLedger(couponRepository, transactionManager, 10);
+
+        assertThat(first.tryAcquire(couponId, 0, 3)).isEqualTo(1);
+        // The first instance leased a single usage, so the rest is still there for the second
+        assertThat(couponRepository.findCurrentUsage(couponId)).isEqualTo(1);
+        assertThat(second.tryAcquire(couponId, 1, 3)).isEqualTo(2);
+        assertThat(second.tryAcquire(couponId, 1, 3)).isEqualTo(3);
+        assertThat(first.tryAcquire(couponId, 1, 3)).isEqualTo(CouponUsageLedger.LIMIT_REACHED);
+    }
+
+    private static Coupon coupon(String code, int maxUsage) {
+        Coupon coupon = new Coupon();
+        coupon.setCode(code);
+        coupon.setName(code);
+        coupon.setDescription("Usage ledger test coupon");
+        coupon.setType(Coupon.CouponType.CART_WISE);
+        coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+        coupon.setDiscountValue(BigDecimal.TEN);
+        coupon.setMaxUsage(maxUsage);
+        return coupon;
+    }
+}
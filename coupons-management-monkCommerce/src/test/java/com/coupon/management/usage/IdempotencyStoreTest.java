@@ -0,0 +1,183 @@
+package com.coupon.management.usage;
+
+import com.coupon.management.exception.CouponException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private static final int DUPLICATES = 20;
+
+    private final IdempotencyStore store = new IdempotencyStore(new SimpleMeterRegistry(), 100L, 60L);
+
+    @Test
+    void repeatedKeyReplaysTheFirstResult() {
+        assertThat(store.execute("key", "request", () -> "first").isReplayed()).isFalse();
+
+        IdempotencyStore.Outcome<String> replay = store.execute("key", "request", () -> "second");
+        assertThat(replay.getValue()).isEqualTo("first");
+        assertThat(replay.isReplayed()).isTrue();
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRejected() {
+        store.execute("key", "request", () -> "first");
+
+        assertThatThrownBy(() -> store.execute("key", "other request", () -> "second"))
+                .isInstanceOf(CouponException.class);
+    }
+
+    @Test
+    void failedRequestCanBeRetried() {
+        assertThatThrownBy(() -> store.execute("key", "request", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        IdempotencyStore.Outcome<String> retry = store.execute("key", "request", () -> "retried");
+        assertThat(retry.getValue()).isEqualTo("retried");
+        assertThat(retry.isReplayed()).isFalse();
+    }
+
+    @Test
+    void concurrentDuplicatesComputeOnce() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(DUPLICATES);
+        try {
+            List<Future<IdempotencyStore.Outcome<Integer>>> outcomes = new ArrayList<>();
+            for (int i = 0; i < DUPLICATES; i++) {
+                outcomes.add(executor.submit(() -> {
+                    start.await();
+                    return store.execute("key", "request", () -> {
+                        sleep(50L);
+                        return computations.incrementAndGet();
+                    });
+                }));
+            }
+            start.countDown();
+
+            int replays = 0;
+            for (Future<IdempotencyStore.Outcome<Integer>> outcome : outcomes) {
+                IdempotencyStore.Outcome<Integer> result = outcome.get(10, TimeUnit.SECONDS);
+                assertThat(result.getValue()).isEqualTo(1);
+                if (result.isReplayed()) {
+                    replays++;
+                }
+            }
+            assertThat(computations.get()).isEqualTo(1);
+            assertThat(replays).isEqualTo(DUPLICATES - 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitingDuplicateGetsTheRuntimeExceptionAsIs() throws Exception {
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        assertThat(failureSeenByDuplicate(() -> {
+            throw failure;
+        })).isSameAs(failure);
+        // Failures are not kept, the key can be used again
+        assertThat(store.execute("key", "request", () -> "retried").getValue()).isEqualTo("retried");
+    }
+
+    @Test
+    void waitingDuplicateGetsTheErrorAsIs() throws Exception {
+        AssertionError failure = new AssertionError("broken");
+
+        assertThat(failureSeenByDuplicate(() -> {
+            throw failure;
+        })).isSameAs(failure);
+        assertThat(store.execute("key", "request", () -> "retried").getValue()).isEqualTo("retried");
+    }
+
+    @Test
+    void waitingDuplicateGetsACheckedCauseWrapped() throws Exception {
+        IOException failure = new IOException("checked");
+
+        Throwable seen = failureSeenByDuplicate(() -> IdempotencyStoreTest.<RuntimeException>sneakyThrow(failure));
+        assertThat(seen).isInstanceOf(CompletionException.class).hasCause(failure);
+    }
+
+    // Runs action as the first request for a key, held back until a duplicate waits on it,
+    // and returns what the duplicate throws
+    private Throwable failureSeenByDuplicate(Supplier<String> action) throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> {
+                try {
+                    store.execute("key", "request", () -> {
+                        firstStarted.countDown();
+                        await(release);
+                        return action.get();
+                    });
+                } catch (Throwable ignored) {
+                    // The first request sees its own failure; only the duplicate's is checked
+                }
+            });
+            assertThat(firstStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+            AtomicReference<Thread> duplicateThread = new AtomicReference<>();
+            Future<Throwable> duplicate = executor.submit(() -> {
+                duplicateThread.set(Thread.currentThread());
+                try {
+                    store.execute("key", "request", () -> "duplicate ran");
+                    return null;
+                } catch (Throwable e) {
+                    return e;
+                }
+            });
+            while (duplicateThread.get() == null || duplicateThread.get().getState() != Thread.State.WAITING) {
+                Thread.sleep(5L);
+            }
+            release.countDown();
+
+            first.get(10, TimeUnit.SECONDS);
+            Throwable seen = duplicate.get(10, TimeUnit.SECONDS);
+            assertThat(seen).isNotNull();
+            return seen;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> String sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+}